@@ -0,0 +1,14 @@
+package blockgame.benchmark;
+
+/**
+ * Shared benchmark settings.
+ */
+public final class Benchmarks {
+	
+	/** Seed every benchmark generates terrain with */
+	public static final long SEED = 1337;
+	
+	private Benchmarks() {
+		//
+	}
+}
@@ -0,0 +1,64 @@
+package blockgame.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import blockgame.game.BlockData;
+import blockgame.game.world.BlockEditBatch;
+import blockgame.game.world.Chunk;
+
+/**
+ * Filling a 16x16x16 box one block at a time, compared to a single batched edit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockEditBenchmark {
+	
+	private static final int SIZE = 16;
+	
+	private HeadlessWorld world;
+	private BlockEditBatch batch = new BlockEditBatch();
+	private int surface;
+	private boolean solid;
+	
+	@Setup
+	public void setup() {
+		world = new HeadlessWorld().generate(2);
+		surface = world.getChunk(0, 0).getTopLevel(8, 8);
+	}
+	
+	@Benchmark
+	public Chunk setBlocks() {
+		// Box straddles four chunks
+		solid = !solid;
+		BlockData block = solid ? BlockData.STONE : BlockData.AIR;
+		for (int x = 0; x < SIZE; x++)
+			for (int y = 0; y < SIZE; y++)
+				for (int z = 0; z < SIZE; z++)
+					world.setBlock(block, x - SIZE/2, surface + y, z - SIZE/2);
+		return world.getChunk(0, 0);
+	}
+	
+	@Benchmark
+	public Chunk batch() {
+		solid = !solid;
+		batch.clear();
+		batch.fill(solid ? BlockData.STONE : BlockData.AIR, -SIZE/2, surface, -SIZE/2, SIZE/2 - 1, surface + SIZE - 1, SIZE/2 - 1);
+		world.apply(batch);
+		return world.getChunk(0, 0);
+	}
+}
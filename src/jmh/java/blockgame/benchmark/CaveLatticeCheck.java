@@ -0,0 +1,81 @@
+package blockgame.benchmark;
+
+import blockgame.game.BlockData;
+import blockgame.game.world.Chunk;
+import blockgame.game.world.WorldConfig;
+import blockgame.game.world.WorldGeneration;
+
+/**
+ * Checks that caves sampled on the default noise lattice match caves sampled at every block, within a tolerance.
+ * Interpolation only moves cave walls, so few blocks may differ and the amount of air carved out must stay close.
+ * <br>
+ * <br>
+ * Usage: java -cp target/benchmarks.jar blockgame.benchmark.CaveLatticeCheck [radius]. Exits with 1 on failure.
+ */
+public class CaveLatticeCheck {
+	
+	/** Largest fraction of blocks allowed to differ from full resolution */
+	public static final double MAX_DIFFERENT_BLOCKS = 0.01;
+	
+	/** Largest relative difference in the amount of air below ground */
+	public static final double MAX_AIR_DIFFERENCE = 0.1;
+	
+	public static void main(String[] args) {
+		int radius = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		
+		WorldConfig lattice = new WorldConfig(Benchmarks.SEED);
+		WorldConfig full = new WorldConfig(Benchmarks.SEED).setCaveSpacing(1, 1);
+		WorldGeneration latticeGeneration = new WorldGeneration(lattice);
+		WorldGeneration fullGeneration = new WorldGeneration(full);
+		HeadlessWorld world = new HeadlessWorld();
+		
+		long blocks = 0;
+		long different = 0;
+		long latticeAir = 0;
+		long fullAir = 0;
+		byte air = BlockData.AIR.getId();
+		for (int i = -radius; i <= radius; i++) {
+			for (int j = -radius; j <= radius; j++) {
+				Chunk a = new Chunk(world, i, j);
+				Chunk b = new Chunk(world, i, j);
+				latticeGeneration.generate(a);
+				fullGeneration.generate(b);
+				
+				for (int x = 0; x < Chunk.WIDTH; x++) {
+					for (int z = 0; z < Chunk.DEPTH; z++) {
+						// Only below the ground, where caves are carved
+						int top = Math.max(a.getHighestBlock(x, z), b.getHighestBlock(x, z));
+						for (int y = 0; y <= top; y++) {
+							byte blockA = a.getBlockId(x, y, z);
+							byte blockB = b.getBlockId(x, y, z);
+							blocks++;
+							if ( blockA != blockB )
+								different++;
+							if ( blockA == air )
+								latticeAir++;
+							if ( blockB == air )
+								fullAir++;
+						}
+					}
+				}
+			}
+		}
+		
+		double differentFraction = different / (double) Math.max(1, blocks);
+		double airDifference = Math.abs(latticeAir - fullAir) / (double) Math.max(1, fullAir);
+		System.out.println("Cave spacing " + lattice.getCaveSpacingXZ() + "x" + lattice.getCaveSpacingY() + " against 1x1, " + blocks + " blocks");
+		System.out.println("Different blocks: " + different + " (" + percent(differentFraction) + ", max " + percent(MAX_DIFFERENT_BLOCKS) + ")");
+		System.out.println("Air below ground: " + latticeAir + " against " + fullAir + " (" + percent(airDifference) + ", max " + percent(MAX_AIR_DIFFERENCE) + ")");
+		
+		if ( differentFraction > MAX_DIFFERENT_BLOCKS || airDifference > MAX_AIR_DIFFERENCE ) {
+			System.out.println("FAILED");
+			System.exit(1);
+		}
+		
+		System.out.println("OK");
+	}
+	
+	private static String percent(double fraction) {
+		return String.format("%.2f%%", fraction * 100);
+	}
+}
@@ -0,0 +1,90 @@
+package blockgame.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import blockgame.game.BlockData;
+import blockgame.game.world.Chunk;
+
+/**
+ * Block reads and writes through {@link blockgame.game.world.World} over a 3x3 area of generated chunks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkAccessBenchmark {
+	private static final int OPERATIONS = 4096;
+	private static final int AREA = Chunk.WIDTH * 3;
+	
+	private HeadlessWorld world;
+	private int[] randomX = new int[OPERATIONS];
+	private int[] randomY = new int[OPERATIONS];
+	private int[] randomZ = new int[OPERATIONS];
+	
+	@Setup
+	public void setup() {
+		world = new HeadlessWorld().generate(1);
+		
+		Random random = new Random(Benchmarks.SEED);
+		for (int i = 0; i < OPERATIONS; i++) {
+			randomX[i] = random.nextInt(AREA) - Chunk.WIDTH;
+			randomY[i] = random.nextInt(Chunk.HEIGHT);
+			randomZ[i] = random.nextInt(AREA) - Chunk.DEPTH;
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(OPERATIONS)
+	public int getBlockIdRandom() {
+		int sum = 0;
+		for (int i = 0; i < OPERATIONS; i++) {
+			sum += world.getBlockId(randomX[i], randomY[i], randomZ[i]);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(OPERATIONS)
+	public int getBlockIdSequential() {
+		int sum = 0;
+		for (int i = 0; i < OPERATIONS; i++) {
+			int x = i / Chunk.HEIGHT % AREA - Chunk.WIDTH;
+			int y = i % Chunk.HEIGHT;
+			sum += world.getBlockId(x, y, 0);
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(OPERATIONS)
+	public void setBlockRandom() {
+		for (int i = 0; i < OPERATIONS; i++) {
+			world.setBlock((i & 1) == 0 ? BlockData.STONE : BlockData.DIRT, randomX[i], randomY[i], randomZ[i]);
+		}
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(OPERATIONS)
+	public void setBlockSequential() {
+		for (int i = 0; i < OPERATIONS; i++) {
+			int x = i / Chunk.HEIGHT % AREA - Chunk.WIDTH;
+			int y = i % Chunk.HEIGHT;
+			world.setBlock((i & 1) == 0 ? BlockData.STONE : BlockData.DIRT, x, y, 0);
+		}
+	}
+}
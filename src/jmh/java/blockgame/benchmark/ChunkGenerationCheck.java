@@ -0,0 +1,120 @@
+package blockgame.benchmark;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import blockgame.game.world.Chunk;
+import blockgame.game.world.ChunkManager;
+import blockgame.game.world.ChunkObserver;
+import blockgame.game.world.ChunkStatus;
+import blockgame.game.world.client.ClientChunkManager;
+import blockgame.game.world.client.FrustumCuller;
+
+/**
+ * Streams chunks around a fixed camera with the client generation policy. Every chunk the client would mesh,
+ * because it is in the frustum or near the camera, must end up lit with all eight neighbours loaded.
+ * <br>
+ * <br>
+ * Usage: java -cp target/benchmarks.jar blockgame.benchmark.ChunkGenerationCheck. Exits with 1 on failure.
+ */
+public class ChunkGenerationCheck {
+
+	/** View distance of the checked camera, in chunks */
+	public static final int VIEW_DISTANCE = 6;
+
+	/** Time given to generation before the check fails, in milliseconds */
+	public static final long TIMEOUT = 60000;
+
+	/** Time the loaded chunks must stay unchanged before generation counts as done, in milliseconds */
+	public static final long SETTLE_TIME = 1000;
+
+	private static final Vector3f EYE = new Vector3f(8, 90, 8);
+	private static final Matrix4f PROJECTION = new Matrix4f().perspective((float)Math.toRadians(60), 16/9f, 0.1f, 3200);
+	private static final Matrix4f VIEW = new Matrix4f().lookAt(EYE, new Vector3f(EYE).add(1, -0.3f, 0.5f), new Vector3f(0, 1, 0));
+
+	public static void main(String[] args) throws InterruptedException {
+		HeadlessWorld world = new HeadlessWorld() {
+			@Override
+			protected ChunkManager createChunkManager() {
+				return new ChunkManager(this, VIEW_DISTANCE) {
+					private final FrustumCuller culler = new FrustumCuller().update(PROJECTION, VIEW);
+
+					@Override
+					protected boolean shouldGenerate(Chunk chunk) {
+						return ClientChunkManager.isGenerationCandidate(culler, EYE, chunk);
+					}
+				};
+			}
+		};
+		ChunkManager manager = world.getChunkManager();
+		manager.addObserver(new ChunkObserver() {
+			@Override
+			public Vector3f getPosition() {
+				return EYE;
+			}
+		});
+
+		// Wait until nothing new is queued
+		long start = System.currentTimeMillis();
+		long lastChange = start;
+		int lastLoaded = -1;
+		while (System.currentTimeMillis() - lastChange < SETTLE_TIME) {
+			if ( System.currentTimeMillis() - start > TIMEOUT ) {
+				System.out.println("Generation did not settle in " + TIMEOUT + "ms");
+				System.out.println("FAILED");
+				System.exit(1);
+			}
+
+			Thread.sleep(50);
+			int loaded = world.getLoadedChunks().size();
+			if ( loaded != lastLoaded || manager.getPendingCount() > 0 ) {
+				lastLoaded = loaded;
+				lastChange = System.currentTimeMillis();
+			}
+		}
+		manager.shutdown();
+
+		// Same tests as the client mesh thread
+		FrustumCuller culler = new FrustumCuller().update(PROJECTION, VIEW);
+		int eyeX = (int)Math.floor(EYE.x/(float)Chunk.WIDTH);
+		int eyeZ = (int)Math.floor(EYE.z/(float)Chunk.DEPTH);
+		float maxDistance = VIEW_DISTANCE * Chunk.WIDTH;
+
+		int checked = 0;
+		int failed = 0;
+		for (int i = eyeX - VIEW_DISTANCE; i <= eyeX + VIEW_DISTANCE; i++) {
+			for (int j = eyeZ - VIEW_DISTANCE; j <= eyeZ + VIEW_DISTANCE; j++) {
+				Chunk chunk = new Chunk(world, i, j);
+				boolean near = (i-eyeX)*(i-eyeX) + (j-eyeZ)*(j-eyeZ) < 2.5f*2.5f;
+				if ( !culler.isVisible(chunk) && !near )
+					continue;
+				if ( chunk.getWorldLocation().toVector3f().distanceSquared(EYE.x, 0, EYE.z) > maxDistance*maxDistance )
+					continue;
+
+				checked++;
+				Chunk loaded = world.getChunk(i, j);
+				int missing = 0;
+				for (int x = -1; x <= 1; x++) {
+					for (int z = -1; z <= 1; z++) {
+						if ( world.getChunk(i+x, j+z) == null )
+							missing++;
+					}
+				}
+
+				if ( loaded == null || !loaded.getStatus().isAtLeast(ChunkStatus.LIGHTED) || missing > 0 ) {
+					failed++;
+					System.out.println("Chunk " + i + "," + j + ": " + (loaded == null ? "not loaded" : loaded.getStatus()) + ", " + missing + " of 9 chunks missing");
+				}
+			}
+		}
+
+		System.out.println(world.getLoadedChunks().size() + " chunks loaded, " + checked + " in view, " + failed + " not lit or missing neighbours");
+		if ( checked == 0 || failed > 0 ) {
+			System.out.println("FAILED");
+			System.exit(1);
+		}
+
+		System.out.println("OK");
+		System.exit(0);
+	}
+}
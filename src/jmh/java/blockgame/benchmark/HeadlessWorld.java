@@ -0,0 +1,37 @@
+package blockgame.benchmark;
+
+import blockgame.game.world.Chunk;
+import blockgame.game.world.ChunkManager;
+import blockgame.game.world.World;
+import blockgame.game.world.WorldConfig;
+
+/**
+ * World without a chunk manager, so nothing reads the GL camera.
+ */
+public class HeadlessWorld extends World {
+	
+	/**
+	 * Create a world with the shared benchmark seed.
+	 */
+	public HeadlessWorld() {
+		super(new WorldConfig(Benchmarks.SEED), null);
+	}
+	
+	@Override
+	protected ChunkManager createChunkManager() {
+		return null;
+	}
+	
+	/**
+	 * Generate and load a square of chunks centered on chunk 0,0.
+	 * @param radius Chunks on each side of the center
+	 */
+	public HeadlessWorld generate(int radius) {
+		for (int i = -radius; i <= radius; i++) {
+			for (int j = -radius; j <= radius; j++) {
+				loadChunk(new Chunk(this, i, j), true);
+			}
+		}
+		return this;
+	}
+}
@@ -0,0 +1,58 @@
+package blockgame.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import blockgame.game.BlockData;
+import blockgame.game.world.Chunk;
+import blockgame.game.world.LightEngine;
+
+/**
+ * Cost of lighting a chunk from scratch, and of relighting after a single block edit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LightBenchmark {
+	
+	private HeadlessWorld world;
+	private Chunk chunk;
+	private LightEngine engine = new LightEngine();
+	private int surface;
+	private boolean solid;
+	
+	@Setup
+	public void setup() {
+		world = new HeadlessWorld().generate(1);
+		chunk = world.getChunk(0, 0);
+		surface = chunk.getTopLevel(8, 8);
+	}
+	
+	@Benchmark
+	public Chunk lightChunk() {
+		chunk.clearLight();
+		engine.lightChunk(world, chunk);
+		return chunk;
+	}
+	
+	@Benchmark
+	public Chunk editBlock() {
+		// Open and close a hole in the surface
+		solid = !solid;
+		world.setBlock(solid ? BlockData.STONE : BlockData.AIR, 8, surface - 1, 8);
+		return chunk;
+	}
+}
@@ -0,0 +1,76 @@
+package blockgame.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import blockgame.game.world.Chunk;
+import blockgame.game.world.ChunkSnapshot;
+import blockgame.game.world.client.ChunkMesher;
+import blockgame.game.world.client.GreedyChunkMesher;
+import blockgame.game.world.client.NaiveChunkMesher;
+import blockgame.gl.PackedVertexStream;
+
+/**
+ * Cost of meshing a generated chunk, with its eight neighbours loaded or on its own.
+ * Includes taking the snapshot the mesher reads from.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MeshBenchmark {
+	
+	@Param({"naive", "greedy"})
+	public String mesher;
+	
+	@Param({"true", "false"})
+	public boolean neighbours;
+	
+	/** Section remeshed by {@link #meshSection()}, around sea level */
+	private static final int SECTION = 4;
+	
+	private ChunkMesher chunkMesher;
+	private Chunk chunk;
+	private ChunkSnapshot snapshot = new ChunkSnapshot();
+	private PackedVertexStream stream = new PackedVertexStream();
+	
+	@Setup
+	public void setup() {
+		chunkMesher = mesher.equals("greedy") ? new GreedyChunkMesher() : new NaiveChunkMesher();
+		
+		HeadlessWorld world = new HeadlessWorld().generate(neighbours ? 1 : 0);
+		chunk = world.getChunk(0, 0);
+	}
+	
+	@Benchmark
+	public int mesh() {
+		stream.clear();
+		snapshot.capture(chunk);
+		chunkMesher.generate(snapshot, stream);
+		return stream.getVertexCount();
+	}
+	
+	/**
+	 * Cost of a single block edit, which only rebuilds the section holding it.
+	 */
+	@Benchmark
+	public int meshSection() {
+		stream.clear();
+		snapshot.capture(chunk, 1 << SECTION);
+		chunkMesher.generate(snapshot, SECTION, stream);
+		return stream.getVertexCount();
+	}
+}
@@ -0,0 +1,86 @@
+package blockgame.benchmark;
+
+import blockgame.game.world.Chunk;
+import blockgame.game.world.ChunkSnapshot;
+import blockgame.game.world.client.ChunkMesher;
+import blockgame.game.world.client.GreedyChunkMesher;
+import blockgame.game.world.client.NaiveChunkMesher;
+import blockgame.gl.PackedVertex;
+import blockgame.gl.PackedVertexStream;
+
+/**
+ * Meshes generated chunks with {@link NaiveChunkMesher} and {@link GreedyChunkMesher}. Merging faces must not
+ * change the surface, so both meshes need the same area in every face direction, and greedy must use fewer quads.
+ * Chunks are meshed with their eight neighbours loaded and on their own.
+ * <br>
+ * <br>
+ * Usage: java -cp target/benchmarks.jar blockgame.benchmark.MesherAreaCheck [radius]. Exits with 1 on failure.
+ */
+public class MesherAreaCheck {
+
+	public static void main(String[] args) {
+		int radius = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+
+		ChunkMesher naive = new NaiveChunkMesher();
+		ChunkMesher greedy = new GreedyChunkMesher();
+		PackedVertexStream naiveStream = new PackedVertexStream();
+		PackedVertexStream greedyStream = new PackedVertexStream();
+		ChunkSnapshot snapshot = new ChunkSnapshot();
+
+		// Neighbours loaded, chunks on the edge of the generated square are left out
+		HeadlessWorld world = new HeadlessWorld().generate(radius + 1);
+
+		int checked = 0;
+		int failures = 0;
+		long naiveQuads = 0;
+		long greedyQuads = 0;
+		for (int i = -radius; i <= radius; i++) {
+			for (int j = -radius; j <= radius; j++) {
+				for (int k = 0; k < 2; k++) {
+					boolean neighbours = k == 0;
+					Chunk chunk;
+					if ( neighbours ) {
+						chunk = world.getChunk(i, j);
+					} else {
+						HeadlessWorld single = new HeadlessWorld();
+						single.loadChunk(new Chunk(single, i, j), true);
+						chunk = single.getChunk(i, j);
+					}
+
+					snapshot.capture(chunk);
+					naiveStream.clear();
+					greedyStream.clear();
+					naive.generate(snapshot, naiveStream);
+					greedy.generate(snapshot, greedyStream);
+
+					checked++;
+					naiveQuads += naiveStream.getQuadCount();
+					greedyQuads += greedyStream.getQuadCount();
+					String name = "Chunk " + i + "," + j + (neighbours ? " with neighbours" : " on its own");
+
+					for (int face = 0; face < PackedVertex.NORMALS.length; face++) {
+						double naiveArea = naiveStream.getSurfaceArea(face);
+						double greedyArea = greedyStream.getSurfaceArea(face);
+						if ( Math.abs(naiveArea - greedyArea) > 1e-6 ) {
+							failures++;
+							System.out.println(name + ", face " + face + ": area " + naiveArea + " naive against " + greedyArea + " greedy");
+						}
+					}
+
+					if ( greedyStream.getQuadCount() >= naiveStream.getQuadCount() ) {
+						failures++;
+						System.out.println(name + ": " + greedyStream.getQuadCount() + " greedy quads against " + naiveStream.getQuadCount() + " naive");
+					}
+				}
+			}
+		}
+
+		System.out.println(checked + " meshes, " + naiveQuads + " naive quads, " + greedyQuads + " greedy quads");
+		if ( failures > 0 ) {
+			System.out.println("FAILED: " + failures + " differences");
+			System.exit(1);
+		}
+
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,71 @@
+package blockgame.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import blockgame.etc.OpenSimplexNoise;
+
+/**
+ * Throughput of {@link OpenSimplexNoise} sampled on a regular grid, like world generation does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NoiseBenchmark {
+	private static final int SIZE = 16;
+	private static final double SCALE = 1 / 16d;
+	
+	private OpenSimplexNoise noise = new OpenSimplexNoise(Benchmarks.SEED);
+	private double[] grid = new double[SIZE * SIZE * SIZE];
+	
+	@Benchmark
+	@OperationsPerInvocation(SIZE * SIZE)
+	public double eval2D() {
+		double sum = 0;
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				sum += noise.eval(i * SCALE, j * SCALE);
+			}
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(SIZE * SIZE * SIZE)
+	public double eval3D() {
+		double sum = 0;
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				for (int k = 0; k < SIZE; k++) {
+					sum += noise.eval(i * SCALE, k * SCALE, j * SCALE);
+				}
+			}
+		}
+		return sum;
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(SIZE * SIZE)
+	public double[] evalGrid2D() {
+		return noise.evalGrid(grid, 0, 0, SCALE, SCALE, SIZE, SIZE);
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(SIZE * SIZE * SIZE)
+	public double[] evalGrid3D() {
+		return noise.evalGrid(grid, 0, 0, 0, SCALE, SCALE, SCALE, SIZE, SIZE, SIZE);
+	}
+}
@@ -0,0 +1,77 @@
+package blockgame.benchmark;
+
+import java.util.Random;
+
+import blockgame.gl.PackedVertex;
+import blockgame.gl.Vertex;
+
+/**
+ * Round trips vertices between the float layout of {@link Vertex} and {@link PackedVertex}. Every value a
+ * chunk mesh can hold must come back unchanged both ways.
+ * <br>
+ * <br>
+ * Usage: java -cp target/benchmarks.jar blockgame.benchmark.PackedVertexCheck. Exits with 1 on failure.
+ */
+public class PackedVertexCheck {
+	
+	private static final int VERTICES = 100000;
+	
+	public static void main(String[] args) {
+		Random random = new Random(Benchmarks.SEED);
+		int[] packed = new int[PackedVertex.elementCount];
+		int[] repacked = new int[PackedVertex.elementCount];
+		float[] floats = new float[Vertex.elementCount];
+		int failures = 0;
+		
+		for (int i = 0; i < VERTICES; i++) {
+			int x = random.nextInt(32);
+			int y = random.nextInt(256);
+			int z = random.nextInt(32);
+			int face = random.nextInt(PackedVertex.NORMALS.length);
+			int u = random.nextInt(256);
+			int v = random.nextInt(256);
+			int tileS = random.nextInt(16);
+			int tileT = random.nextInt(16);
+			int light = random.nextInt(256);
+			
+			// Packed -> float -> packed
+			packed[0] = PackedVertex.packPosition(x, y, z, face);
+			packed[1] = PackedVertex.packTexture(u, v, tileS, tileT, light);
+			PackedVertex.unpack(packed, 0, floats, 0);
+			PackedVertex.pack(floats, 0, repacked, 0);
+			if ( packed[0] != repacked[0] || packed[1] != repacked[1] ) {
+				if ( failures++ < 10 )
+					System.out.println("Packed round trip changed " + describe(packed) + " into " + describe(repacked));
+			}
+			
+			// Float -> packed -> float, starting from a Vertex
+			int[] normal = PackedVertex.NORMALS[face];
+			float shade = light / 255f;
+			float[] expected = new Vertex(x, y, z, normal[0], normal[1], normal[2], tileS * PackedVertex.TILE_STRIDE + u, tileT * PackedVertex.TILE_STRIDE + v, shade, shade, shade, 1).getElements();
+			PackedVertex.pack(expected, 0, packed, 0);
+			PackedVertex.unpack(packed, 0, floats, 0);
+			for (int j = 0; j < Vertex.elementCount; j++) {
+				if ( floats[j] != expected[j] ) {
+					if ( failures++ < 10 )
+						System.out.println("Float round trip changed element " + j + " from " + expected[j] + " to " + floats[j]);
+					break;
+				}
+			}
+		}
+		
+		if ( failures > 0 ) {
+			System.out.println("FAILED: " + failures + " of " + VERTICES * 2 + " round trips");
+			System.exit(1);
+		}
+		
+		System.out.println("OK: " + VERTICES * 2 + " round trips");
+	}
+	
+	private static String describe(int[] vertex) {
+		int position = vertex[0];
+		int texture = vertex[1];
+		return "(" + PackedVertex.getX(position) + ", " + PackedVertex.getY(position) + ", " + PackedVertex.getZ(position) + ", face " + PackedVertex.getFace(position)
+				+ ", uv " + PackedVertex.getU(texture) + " " + PackedVertex.getV(texture) + ", tile " + PackedVertex.getTileS(texture) + " " + PackedVertex.getTileT(texture)
+				+ ", light " + PackedVertex.getLight(texture) + ")";
+	}
+}
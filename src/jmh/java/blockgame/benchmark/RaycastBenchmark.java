@@ -0,0 +1,46 @@
+package blockgame.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import blockgame.game.world.RaycastResult;
+
+/**
+ * Cost of picking a block with {@link blockgame.game.world.World#raycast(float, float, float, float, float, float, float, RaycastResult)},
+ * looking down at the terrain from above at a slant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RaycastBenchmark {
+	
+	private HeadlessWorld world;
+	private RaycastResult result = new RaycastResult();
+	private int ray;
+	
+	@Setup
+	public void setup() {
+		world = new HeadlessWorld().generate(1);
+	}
+	
+	@Benchmark
+	public RaycastResult raycast() {
+		// Spread rays over the center chunk
+		ray = (ray + 1) & 255;
+		world.raycast((ray & 15) + 0.5f, 100, (ray >> 4) + 0.5f, 0.3f, -1, 0.2f, 64, result);
+		return result;
+	}
+}
@@ -0,0 +1,50 @@
+package blockgame.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import blockgame.game.world.Chunk;
+import blockgame.game.world.WorldGeneration;
+
+/**
+ * Cost of generating detached chunks with {@link WorldGeneration}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorldGenerationBenchmark {
+	
+	@Param({"1", "16"})
+	public int chunks;
+	
+	private HeadlessWorld world;
+	
+	@Setup
+	public void setup() {
+		world = new HeadlessWorld();
+	}
+	
+	@Benchmark
+	public void generate(Blackhole blackhole) {
+		for (int i = 0; i < chunks; i++) {
+			Chunk chunk = new Chunk(world, i % 4, i / 4);
+			world.getGeneration().generate(chunk);
+			blackhole.consume(chunk);
+		}
+	}
+}
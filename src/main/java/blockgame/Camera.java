@@ -5,9 +5,10 @@ import org.joml.Vector3f;
 import org.lwjgl.glfw.GLFW;
 
 import blockgame.game.Location;
+import blockgame.game.world.ChunkObserver;
 import blockgame.gl.Shader;
 
-public class Camera implements RenderableCallback {
+public class Camera implements RenderableCallback, ChunkObserver {
 	private float x;
 	private float y;
 	private float z;
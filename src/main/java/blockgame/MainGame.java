@@ -1,7 +1,12 @@
 package blockgame;
 
+import java.io.File;
+import java.io.IOException;
+
 import blockgame.game.world.World;
+import blockgame.game.world.WorldConfig;
 import blockgame.game.world.client.ClientWorld;
+import blockgame.game.world.storage.RegionStorage;
 
 public class MainGame implements RenderableCallback, Initializable {
 	public static World world;
@@ -19,7 +24,24 @@ public class MainGame implements RenderableCallback, Initializable {
 	@Override
 	public void initialize() {
 		Application.addRenderable(new Resources());
-		Application.addRenderable((RenderableCallback) (world = new ClientWorld()));
+		
+		// The world directory keeps its seed, so it generates the same terrain when reopened
+		File directory = new File("worlds", "world");
+		WorldConfig config;
+		try {
+			config = WorldConfig.load(directory);
+		} catch (IOException e) {
+			e.printStackTrace();
+			config = new WorldConfig();
+		}
+		
+		RegionStorage storage = new RegionStorage(directory);
+		Application.addRenderable((RenderableCallback) (world = new ClientWorld(config, storage)));
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			// Stop loading, generating and evicting chunks before the region files are closed
+			world.getChunkManager().shutdown();
+			world.save();
+		}));
 	}
 
 	@Override
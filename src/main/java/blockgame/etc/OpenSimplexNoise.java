@@ -746,6 +746,44 @@ public class OpenSimplexNoise {
 		return value / NORM_CONSTANT_3D;
 	}
 	
+	//2D OpenSimplex Noise over a regular grid.
+	//Sample (i, j) is taken at (x + i * stepX, y + j * stepY) and stored at out[i * sizeY + j].
+	//Coordinates are computed from the index rather than accumulated, so long rows do not drift.
+	public double[] evalGrid(double[] out, double x, double y, double stepX, double stepY, int sizeX, int sizeY) {
+		if (out == null || out.length < sizeX * sizeY)
+			out = new double[sizeX * sizeY];
+		
+		for (int i = 0; i < sizeX; i++) {
+			double xi = x + i * stepX;
+			int row = i * sizeY;
+			for (int j = 0; j < sizeY; j++) {
+				out[row + j] = eval(xi, y + j * stepY);
+			}
+		}
+		
+		return out;
+	}
+	
+	//3D OpenSimplex Noise over a regular grid.
+	//Sample (i, j, k) is taken at (x + i * stepX, y + j * stepY, z + k * stepZ) and stored at out[(i * sizeY + j) * sizeZ + k].
+	public double[] evalGrid(double[] out, double x, double y, double z, double stepX, double stepY, double stepZ, int sizeX, int sizeY, int sizeZ) {
+		if (out == null || out.length < sizeX * sizeY * sizeZ)
+			out = new double[sizeX * sizeY * sizeZ];
+		
+		for (int i = 0; i < sizeX; i++) {
+			double xi = x + i * stepX;
+			for (int j = 0; j < sizeY; j++) {
+				double yj = y + j * stepY;
+				int row = (i * sizeY + j) * sizeZ;
+				for (int k = 0; k < sizeZ; k++) {
+					out[row + k] = eval(xi, yj, z + k * stepZ);
+				}
+			}
+		}
+		
+		return out;
+	}
+	
 	//4D OpenSimplex Noise.
 	public double eval(double x, double y, double z, double w) {
 	
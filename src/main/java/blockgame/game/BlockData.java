@@ -1,29 +1,38 @@
 package blockgame.game;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public enum BlockData {
 	GRASS(1, new TextureInfo(TextureType.ALL, 3,0), new TextureInfo(TextureType.TOP, 0,0), new TextureInfo(TextureType.BOTTOM, 2,0)),
 	STONE(2, new TextureInfo(TextureType.ALL, 1,0)),
 	DIRT(3, new TextureInfo(TextureType.ALL, 2,0)),
 	LOG(4, new TextureInfo(TextureType.ALL, 4,1), new TextureInfo(TextureType.TOP, 5,1), new TextureInfo(TextureType.BOTTOM, 5,1)),
-	LEAF(5, params().setOcclude(false), new TextureInfo(TextureType.ALL, 4,3)),
+	LEAF(5, params().setOcclude(false).setOpacity(1), new TextureInfo(TextureType.ALL, 4,3)),
 	SAND(6, new TextureInfo(TextureType.ALL, 2,1)),
 	BEDROCK(7, new TextureInfo(TextureType.ALL, 1,1)),
 	WATER(8, new TextureInfo(TextureType.ALL, 0,9)),
-	AIR(0, params().setSolid(false).setOcclude(false));
+	AIR(0, params().setSolid(false).setOcclude(false).setOpacity(0));
+	
+	/** Brightest light level */
+	public static final int MAX_LIGHT = 15;
 	
 	private byte id;
 	private BlockParams params;
 	private TextureInfo[] textureInformation;
 	
-	private static Map<Byte, BlockData> blockMap;
+	private static BlockData[] blockArray;
+	
+	/** Light properties by block id, read for every cell while propagating light */
+	private static final byte[] opacityArray = new byte[256];
+	private static final byte[] emissionArray = new byte[256];
 	
 	static {
-		blockMap = new HashMap<>();
+		blockArray = new BlockData[256];
+		Arrays.fill(opacityArray, (byte) MAX_LIGHT);
 		for (BlockData data : values()) {
-			blockMap.put(data.id, data);
+			blockArray[data.id & 0xFF] = data;
+			opacityArray[data.id & 0xFF] = (byte) data.params.opacity;
+			emissionArray[data.id & 0xFF] = (byte) data.params.emission;
 		}
 	}
 	
@@ -56,7 +65,7 @@ public enum BlockData {
 	}
 
 	public static BlockData getBlockData(byte blockId) {
-		return blockMap.get(blockId);
+		return blockArray[blockId & 0xFF];
 	}
 	
 	public static boolean isSolid(BlockData block) {
@@ -67,6 +76,21 @@ public enum BlockData {
 		return block.params.occlude;
 	}
 	
+	/**
+	 * Returns how much light is lost passing through a block, 0 to {@link #MAX_LIGHT}. Light does not pass
+	 * through blocks of MAX_LIGHT opacity. Unknown ids block light.
+	 */
+	public static int getOpacity(byte blockId) {
+		return opacityArray[blockId & 0xFF];
+	}
+	
+	/**
+	 * Returns the block light level a block gives off, 0 to {@link #MAX_LIGHT}.
+	 */
+	public static int getLightEmission(byte blockId) {
+		return emissionArray[blockId & 0xFF];
+	}
+	
 	private static BlockParams params() {
 		return new BlockParams();
 	}
@@ -75,6 +99,8 @@ public enum BlockData {
 class BlockParams {
 	boolean solid = true;
 	boolean occlude = true;
+	int opacity = BlockData.MAX_LIGHT;
+	int emission = 0;
 
 	public BlockParams setSolid(boolean b) {
 		this.solid = b;
@@ -85,4 +111,14 @@ class BlockParams {
 		this.occlude = b;
 		return this;
 	}
+
+	public BlockParams setOpacity(int opacity) {
+		this.opacity = opacity;
+		return this;
+	}
+
+	public BlockParams setLightEmission(int emission) {
+		this.emission = emission;
+		return this;
+	}
 }
@@ -0,0 +1,172 @@
+package blockgame.game.world;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import blockgame.game.BlockData;
+
+/**
+ * Block writes collected up front and written with {@link World#apply(BlockEditBatch)}. Writes are grouped
+ * by chunk as they are added, so applying looks up each chunk once, and each touched section is remeshed
+ * and relit once instead of once per block.
+ * <br>
+ * <br>
+ * Coordinates are in block-space. Later writes to the same block win. A batch is not thread-safe and can be
+ * reused after {@link #clear()}.
+ */
+public class BlockEditBatch {
+	private final Map<Long, Writes> chunks = new HashMap<Long, Writes>();
+
+	/** Chunks in the order they were first written to */
+	private final List<Writes> order = new ArrayList<Writes>();
+
+	/** Chunk of the previous write. Consecutive writes mostly land in the same chunk */
+	private Writes last;
+
+	private int size;
+
+	/**
+	 * Set a single block.
+	 * @return This batch, so calls can be chained.
+	 */
+	public BlockEditBatch setBlock( BlockData block, int x, int y, int z ) {
+		return setBlock( block.getId(), x, y, z );
+	}
+
+	/**
+	 * Set a single block.
+	 * @return This batch, so calls can be chained.
+	 */
+	public BlockEditBatch setBlock( byte blockId, int x, int y, int z ) {
+		if ( y < 0 || y >= Chunk.HEIGHT )
+			return this;
+
+		int chunkX = Math.floorDiv(x, Chunk.WIDTH);
+		int chunkZ = Math.floorDiv(z, Chunk.DEPTH);
+		writesFor(chunkX, chunkZ).add( Chunk.packWrite(x - chunkX * Chunk.WIDTH, y, z - chunkZ * Chunk.DEPTH, blockId) );
+		size++;
+		return this;
+	}
+
+	/**
+	 * Set every block in a box. Corners are inclusive and may be given in any order.
+	 * @return This batch, so calls can be chained.
+	 */
+	public BlockEditBatch fill( BlockData block, int x1, int y1, int z1, int x2, int y2, int z2 ) {
+		int minX = Math.min(x1, x2), maxX = Math.max(x1, x2);
+		int minY = Math.max(0, Math.min(y1, y2)), maxY = Math.min(Chunk.HEIGHT - 1, Math.max(y1, y2));
+		int minZ = Math.min(z1, z2), maxZ = Math.max(z1, z2);
+		if ( minY > maxY )
+			return this;
+
+		// Walk the box one chunk at a time
+		byte blockId = block.getId();
+		for (int chunkX = Math.floorDiv(minX, Chunk.WIDTH); chunkX <= Math.floorDiv(maxX, Chunk.WIDTH); chunkX++) {
+			for (int chunkZ = Math.floorDiv(minZ, Chunk.DEPTH); chunkZ <= Math.floorDiv(maxZ, Chunk.DEPTH); chunkZ++) {
+				int fromX = Math.max(minX - chunkX * Chunk.WIDTH, 0);
+				int toX = Math.min(maxX - chunkX * Chunk.WIDTH, Chunk.WIDTH - 1);
+				int fromZ = Math.max(minZ - chunkZ * Chunk.DEPTH, 0);
+				int toZ = Math.min(maxZ - chunkZ * Chunk.DEPTH, Chunk.DEPTH - 1);
+
+				Writes writes = writesFor(chunkX, chunkZ);
+				for (int i = fromX; i <= toX; i++) {
+					for (int k = fromZ; k <= toZ; k++) {
+						for (int j = minY; j <= maxY; j++) {
+							writes.add( Chunk.packWrite(i, j, k, blockId) );
+						}
+					}
+				}
+				size += (toX - fromX + 1) * (toZ - fromZ + 1) * (maxY - minY + 1);
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Copy the blocks of a schematic into the world, with its minimum corner at a position. Air in the schematic is skipped.
+	 * @return This batch, so calls can be chained.
+	 */
+	public BlockEditBatch place( Schematic schematic, int x, int y, int z ) {
+		byte air = BlockData.AIR.getId();
+		for (int i = 0; i < schematic.getSizeX(); i++) {
+			for (int k = 0; k < schematic.getSizeZ(); k++) {
+				for (int j = 0; j < schematic.getSizeY(); j++) {
+					byte blockId = schematic.getBlockId(i, j, k);
+					if ( blockId != air )
+						setBlock( blockId, x + i, y + j, z + k );
+				}
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * @return The amount of block writes in this batch.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Forget all writes.
+	 */
+	public void clear() {
+		chunks.clear();
+		order.clear();
+		last = null;
+		size = 0;
+	}
+
+	/**
+	 * @return Writes per chunk, in the order the chunks were first written to.
+	 */
+	protected List<Writes> getChunks() {
+		return this.order;
+	}
+
+	private Writes writesFor( int chunkX, int chunkZ ) {
+		Writes writes = this.last;
+		if ( writes != null && writes.chunkX == chunkX && writes.chunkZ == chunkZ )
+			return writes;
+
+		long key = ChunkMap.key(chunkX, chunkZ);
+		writes = chunks.get(key);
+		if ( writes == null ) {
+			writes = new Writes(chunkX, chunkZ);
+			chunks.put(key, writes);
+			order.add(writes);
+		}
+
+		this.last = writes;
+		return writes;
+	}
+
+	/**
+	 * Packed writes to one chunk, see {@link Chunk#packWrite(int, int, int, byte)}.
+	 */
+	protected static class Writes {
+		final int chunkX;
+		final int chunkZ;
+		int[] data = new int[16];
+		int size;
+
+		Writes( int chunkX, int chunkZ ) {
+			this.chunkX = chunkX;
+			this.chunkZ = chunkZ;
+		}
+
+		void add( int write ) {
+			if ( size == data.length ) {
+				int[] newData = new int[size * 2];
+				System.arraycopy(data, 0, newData, 0, size);
+				data = newData;
+			}
+
+			data[size++] = write;
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package blockgame.game.world;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import blockgame.game.BlockData;
 import blockgame.game.Location;
 
@@ -7,11 +11,42 @@ public class Chunk {
 	public static final int WIDTH = 16;
 	public static final int DEPTH = 16;
 	public static final int HEIGHT = 128;
+	public static final int SECTIONS = HEIGHT / ChunkSection.SIZE;
+	
+	/** Section mask with every section set */
+	public static final int ALL_SECTIONS = (1 << SECTIONS) - 1;
+	
+	/** Horizontal sides of a chunk, used to index border changes */
+	public static final int SIDE_WEST = 0;
+	public static final int SIDE_EAST = 1;
+	public static final int SIDE_NORTH = 2;
+	public static final int SIDE_SOUTH = 3;
+	
+	/** One bit per section whose blocks or neighbours changed since it was last meshed */
+	private final AtomicInteger dirtySections = new AtomicInteger();
+	
+	/** One section mask per side, of edge blocks that changed since neighbours were last told. See {@link #takeBorderChanges()} */
+	private final AtomicInteger borderChanges = new AtomicInteger();
+	
+	private final AtomicReference<ChunkStatus> status = new AtomicReference<ChunkStatus>(ChunkStatus.EMPTY);
 	
-	protected boolean updated = false;
-	protected boolean loaded = true;
+	/** Last time the chunk was within range of an observer, see {@link #touch()} */
+	private volatile long lastObserved = System.currentTimeMillis();
 	
-	private byte[] blocks = new byte[WIDTH * DEPTH * HEIGHT];
+	/** Set when blocks changed since the chunk was last saved */
+	protected boolean dirty = false;
+	
+	private final ChunkSection[] sections = new ChunkSection[SECTIONS];
+	
+	/** Per column, y + 1 of the highest block that is not air. 0 for an empty column */
+	private final byte[] heightmap = new byte[WIDTH * DEPTH];
+	
+	/** Per column, y + 1 of the highest block that occludes. 0 if there is none */
+	private final byte[] occludingHeightmap = new byte[WIDTH * DEPTH];
+	
+	/** Light of each section, filled in by {@link LightEngine} */
+	private final NibbleArray[] skyLight = new NibbleArray[SECTIONS];
+	private final NibbleArray[] blockLight = new NibbleArray[SECTIONS];
 	
 	protected int x;
 	protected int z;
@@ -22,13 +57,11 @@ public class Chunk {
 		this.z = z;
 		this.world = world;
 		
-		// Initial loop. Set all to air
-		for (int i = 0; i < WIDTH; i++) {
-			for (int j = 0; j < HEIGHT; j++) {
-				for (int k = 0; k < DEPTH; k++) {
-					setBlock(BlockData.AIR, i, j, k);
-				}
-			}
+		// Sections start out as uniform air
+		for (int i = 0; i < SECTIONS; i++) {
+			sections[i] = new ChunkSection();
+			skyLight[i] = new NibbleArray(0);
+			blockLight[i] = new NibbleArray(0);
 		}
 	}
 	
@@ -50,8 +83,220 @@ public class Chunk {
 		if ( z >= DEPTH )
 			return;
 		
-		this.blocks[(x << 11 | z << 7 | y)] = blockId;
-		updated = true;
+		this.sections[y >> 4].set(x, y & 15, z, blockId);
+		dirty = true;
+		updateHeightmaps(x, y, z, blockId);
+		
+		markSectionsDirty(getSectionMask(y));
+		
+		int border = getBorderMask(x, y, z);
+		if ( border != 0 )
+			setBits(borderChanges, border);
+	}
+	
+	/**
+	 * Pack a chunk-local block write for {@link #setBlocks(int[], int)}.
+	 * @throws IndexOutOfBoundsException If the position is outside the chunk. It would spill into the other fields.
+	 */
+	public static int packWrite( int x, int y, int z, byte blockId ) {
+		if ( x < 0 || y < 0 || z < 0 || x >= WIDTH || y >= HEIGHT || z >= DEPTH )
+			throw new IndexOutOfBoundsException("(" + x + ", " + y + ", " + z + ") is outside a chunk");
+		
+		return (x << 11 | z << 7 | y) << 8 | (blockId & 0xFF);
+	}
+	
+	/**
+	 * Write many blocks at once. Sections and borders are flagged once for all of them.
+	 * @param writes Writes packed with {@link #packWrite(int, int, int, byte)}
+	 * @param count Amount of writes to read from the array
+	 */
+	public void setBlocks( int[] writes, int count ) {
+		int mask = 0;
+		int border = 0;
+		for (int i = 0; i < count; i++) {
+			int write = writes[i];
+			int position = write >>> 8;
+			int x = position >> 11;
+			int y = position & 127;
+			int z = (position >> 7) & 15;
+			byte blockId = (byte) write;
+			this.sections[y >> 4].set(x, y & 15, z, blockId);
+			updateHeightmaps(x, y, z, blockId);
+			
+			mask |= getSectionMask(y);
+			border |= getBorderMask(x, y, z);
+		}
+		
+		if ( mask == 0 )
+			return;
+		
+		dirty = true;
+		markSectionsDirty(mask);
+		if ( border != 0 )
+			setBits(borderChanges, border);
+	}
+	
+	/**
+	 * Sections whose faces touch a block at a height. The sections above and below see blocks on their boundary.
+	 */
+	private static int getSectionMask( int y ) {
+		int section = y >> 4;
+		int mask = 1 << section;
+		if ( (y & 15) == 0 && section > 0 )
+			mask |= 1 << (section - 1);
+		if ( (y & 15) == 15 && section < SECTIONS - 1 )
+			mask |= 1 << (section + 1);
+		return mask;
+	}
+	
+	/**
+	 * Border flags of the neighbours that see a block. See {@link #takeBorderChanges()}.
+	 */
+	private static int getBorderMask( int x, int y, int z ) {
+		int section = y >> 4;
+		int border = 0;
+		if ( x == 0 )
+			border |= 1 << (SIDE_WEST * SECTIONS + section);
+		if ( x == WIDTH - 1 )
+			border |= 1 << (SIDE_EAST * SECTIONS + section);
+		if ( z == 0 )
+			border |= 1 << (SIDE_NORTH * SECTIONS + section);
+		if ( z == DEPTH - 1 )
+			border |= 1 << (SIDE_SOUTH * SECTIONS + section);
+		return border;
+	}
+	
+	/**
+	 * Keep the column heightmaps up to date after a block write. Only rescans when the top block of a column is removed.
+	 */
+	private void updateHeightmaps( int x, int y, int z, byte blockId ) {
+		int column = x * DEPTH + z;
+		
+		int top = heightmap[column] & 0xFF;
+		if ( blockId != BlockData.AIR.getId() ) {
+			if ( y >= top )
+				heightmap[column] = (byte) (y + 1);
+		} else if ( y + 1 == top ) {
+			heightmap[column] = (byte) findHeight(x, y - 1, z, false);
+		}
+		
+		int occludingTop = occludingHeightmap[column] & 0xFF;
+		if ( isOccluding(blockId) ) {
+			if ( y >= occludingTop )
+				occludingHeightmap[column] = (byte) (y + 1);
+		} else if ( y + 1 == occludingTop ) {
+			occludingHeightmap[column] = (byte) findHeight(x, y - 1, z, true);
+		}
+	}
+	
+	/**
+	 * Scan down a column for its highest block.
+	 * @param y First y to test
+	 * @param occluding Only count blocks that occlude
+	 * @return y + 1 of the block found, or 0.
+	 */
+	private int findHeight( int x, int y, int z, boolean occluding ) {
+		for (int i = y; i >= 0; i--) {
+			// Skip over empty sections
+			if ( sections[i >> 4].isEmpty() ) {
+				i &= ~15;
+				continue;
+			}
+			
+			byte block = getBlockId(x, i, z);
+			if ( occluding ? isOccluding(block) : block != BlockData.AIR.getId() )
+				return i + 1;
+		}
+		
+		return 0;
+	}
+	
+	private static boolean isOccluding( byte blockId ) {
+		BlockData data = BlockData.getBlockData(blockId);
+		return data != null && BlockData.isOcclude(data);
+	}
+	
+	/**
+	 * Returns the highest block in a column that is not air.
+	 * @param x Chunk-local x
+	 * @param z Chunk-local z
+	 * @return The block y position, or -1 if the column is empty.
+	 */
+	public int getHighestBlock( int x, int z ) {
+		return (heightmap[x * DEPTH + z] & 0xFF) - 1;
+	}
+	
+	/**
+	 * Returns the highest block in a column that occludes the faces next to it.
+	 * @param x Chunk-local x
+	 * @param z Chunk-local z
+	 * @return The block y position, or -1 if the column has none.
+	 */
+	public int getHighestOccluding( int x, int z ) {
+		return (occludingHeightmap[x * DEPTH + z] & 0xFF) - 1;
+	}
+	
+	/**
+	 * Flag sections for a mesh update.
+	 * @param mask One bit per section index
+	 */
+	public void markSectionsDirty( int mask ) {
+		setBits(dirtySections, mask & ALL_SECTIONS);
+	}
+	
+	/**
+	 * Set bits of an atomic mask. Skips the write when they are all set already, which is the common case while generating.
+	 */
+	private static void setBits( AtomicInteger target, int bits ) {
+		int current;
+		do {
+			current = target.get();
+			if ( (current & bits) == bits )
+				return;
+		} while ( !target.compareAndSet(current, current | bits) );
+	}
+	
+	/**
+	 * Flag every section for a mesh update.
+	 */
+	public void markDirty() {
+		markSectionsDirty(ALL_SECTIONS);
+	}
+	
+	/**
+	 * @return True if any section needs a mesh update.
+	 */
+	public boolean isUpdated() {
+		return dirtySections.get() != 0;
+	}
+	
+	/**
+	 * Returns the sections that need a mesh update and clears them. Sections changed after this call
+	 * are flagged again.
+	 * @return One bit per section index
+	 */
+	public int takeDirtySections() {
+		return dirtySections.getAndSet(0);
+	}
+	
+	/**
+	 * Returns the sections of each side whose edge blocks changed, and clears them.
+	 * @return {@link #SECTIONS} bits per side, side n starting at bit n * SECTIONS.
+	 */
+	public int takeBorderChanges() {
+		return borderChanges.getAndSet(0);
+	}
+	
+	/**
+	 * @return One bit per section index, set for sections that contain anything other than air.
+	 */
+	public int getNonEmptySections() {
+		int mask = 0;
+		for (int i = 0; i < SECTIONS; i++) {
+			if ( !sections[i].isEmpty() )
+				mask |= 1 << i;
+		}
+		return mask;
 	}
 	
 	public Block getBlock( int x, int y, int z ) {
@@ -74,16 +319,209 @@ public class Chunk {
 		if ( z >= DEPTH )
 			return (byte) BlockData.AIR.getId();
 		
-		return this.blocks[(x << 11 | z << 7 | y)];
+		return this.sections[y >> 4].get(x, y & 15, z);
+	}
+	
+	/**
+	 * Returns the sky light level at a chunk-local position. Above the chunk is full sky light.
+	 */
+	public int getSkyLight( int x, int y, int z ) {
+		if ( y >= HEIGHT )
+			return BlockData.MAX_LIGHT;
+		if ( x < 0 || y < 0 || z < 0 || x >= WIDTH || z >= DEPTH )
+			return 0;
+		
+		return this.skyLight[y >> 4].get(x, y & 15, z);
+	}
+	
+	/**
+	 * Returns the block light level at a chunk-local position.
+	 */
+	public int getBlockLight( int x, int y, int z ) {
+		if ( x < 0 || y < 0 || z < 0 || x >= WIDTH || y >= HEIGHT || z >= DEPTH )
+			return 0;
+		
+		return this.blockLight[y >> 4].get(x, y & 15, z);
+	}
+	
+	/**
+	 * Sets the sky light level at a chunk-local position. Does not propagate, see {@link LightEngine}.
+	 */
+	public void setSkyLight( int x, int y, int z, int level ) {
+		this.skyLight[y >> 4].set(x, y & 15, z, level);
+	}
+	
+	/**
+	 * Sets the block light level at a chunk-local position. Does not propagate, see {@link LightEngine}.
+	 */
+	public void setBlockLight( int x, int y, int z, int level ) {
+		this.blockLight[y >> 4].set(x, y & 15, z, level);
+	}
+	
+	/**
+	 * Sets the sky light of a whole section to one level.
+	 * @param index Section index, y >> 4
+	 */
+	public void fillSkyLight( int index, int level ) {
+		this.skyLight[index].fill(level);
+	}
+	
+	/**
+	 * Set all light in this chunk back to dark.
+	 */
+	public void clearLight() {
+		for (int i = 0; i < SECTIONS; i++) {
+			skyLight[i].fill(0);
+			blockLight[i].fill(0);
+		}
+	}
+	
+	/**
+	 * Returns the section containing a range of 16 block y positions.
+	 * @param index Section index, y >> 4
+	 */
+	public ChunkSection getSection( int index ) {
+		return this.sections[index];
+	}
+	
+	/**
+	 * @param index Section index, y >> 4
+	 * @return True if the section only contains air.
+	 */
+	public boolean isSectionEmpty( int index ) {
+		return this.sections[index].isEmpty();
+	}
+	
+	/**
+	 * Serialize the blocks of this chunk into a buffer.
+	 * @param out
+	 */
+	public void writeBlocks( ByteBuffer out ) {
+		for (int i = 0; i < SECTIONS; i++) {
+			sections[i].write(out);
+		}
+	}
+	
+	/**
+	 * Replace the blocks of this chunk with data written by {@link #writeBlocks(ByteBuffer)}.
+	 * @param in
+	 */
+	public void readBlocks( ByteBuffer in ) {
+		for (int i = 0; i < SECTIONS; i++) {
+			sections[i].read(in);
+		}
+		
+		for (int i = 0; i < WIDTH; i++) {
+			for (int k = 0; k < DEPTH; k++) {
+				heightmap[i * DEPTH + k] = (byte) findHeight(i, HEIGHT - 1, k, false);
+				occludingHeightmap[i * DEPTH + k] = (byte) findHeight(i, HEIGHT - 1, k, true);
+			}
+		}
+		
+		// Everything changed, as far as meshes and neighbours are concerned
+		int mask = getNonEmptySections();
+		markDirty();
+		borderChanges.set(mask | mask << SECTIONS | mask << (SECTIONS * 2) | mask << (SECTIONS * 3));
+	}
+	
+	/**
+	 * @return True if blocks changed since the chunk was last saved.
+	 */
+	public boolean isDirty() {
+		return this.dirty;
 	}
 	
+	/**
+	 * Mark this chunk as matching what is stored on disk.
+	 */
+	public void markSaved() {
+		this.dirty = false;
+	}
+	
+	/**
+	 * Mark this chunk as changed since it was last saved.
+	 */
+	public void markUnsaved() {
+		this.dirty = true;
+	}
+	
+	/**
+	 * @return The stage this chunk has reached.
+	 */
+	public ChunkStatus getStatus() {
+		return this.status.get();
+	}
+	
+	/**
+	 * Move this chunk to another stage.
+	 * @param status
+	 */
+	public void setStatus( ChunkStatus status ) {
+		this.status.set(status);
+	}
+	
+	/**
+	 * Move this chunk to another stage, only if it is still at the expected stage.
+	 * @return False if another thread moved the chunk first.
+	 */
+	public boolean compareAndSetStatus( ChunkStatus expect, ChunkStatus update ) {
+		return this.status.compareAndSet(expect, update);
+	}
+	
+	/**
+	 * Record that an observer is near this chunk. Chunks that have not been touched for the
+	 * longest time are evicted first.
+	 */
+	public void touch() {
+		this.lastObserved = System.currentTimeMillis();
+	}
+	
+	/**
+	 * @return The last time an observer was near this chunk, in milliseconds.
+	 */
+	public long getLastObserved() {
+		return this.lastObserved;
+	}
+	
+	/**
+	 * @return Approximate memory used by this chunk in bytes.
+	 */
+	public long getMemoryUsage() {
+		long bytes = 64 + heightmap.length + occludingHeightmap.length;
+		for (int i = 0; i < SECTIONS; i++) {
+			bytes += sections[i].getMemoryUsage();
+			bytes += skyLight[i].getMemoryUsage() + blockLight[i].getMemoryUsage();
+		}
+		return bytes;
+	}
+	
+	/**
+	 * Called once the chunk has been removed from its world. Release anything it holds on to.
+	 */
+	protected void dispose() {
+		//
+	}
+	
+	/**
+	 * Hide a meshed chunk. It is meshed again if it comes back into view.
+	 */
 	protected void unload() {
-		this.updated = true;
-		this.loaded = false;
+		if ( compareAndSetStatus(ChunkStatus.MESHED, ChunkStatus.UNLOADING) )
+			markDirty();
+	}
+
+	/**
+	 * @return The chunk x coordinate. This is in chunk-space.
+	 */
+	public int getX() {
+		return this.x;
 	}
 	
-	public boolean loaded() {
-		return this.loaded;
+	/**
+	 * @return The chunk z coordinate. This is in chunk-space.
+	 */
+	public int getZ() {
+		return this.z;
 	}
 
 	/**
@@ -108,19 +546,12 @@ public class Chunk {
 	}
 
 	/**
-	 * Returns the top most block y position in this chunk that is not air.
+	 * Returns the y position of the first air above the highest block in a column. Caves below the surface are skipped.
 	 * @param x
 	 * @param z
 	 */
 	public int getTopLevel(int x, int z) {
-		for (int i = 0; i < HEIGHT; i++) {
-			byte block = getBlockId( x, i, z );
-			if ( block == BlockData.AIR.getId() ) {
-				return i;
-			}
-		}
-		
-		return HEIGHT-1;
+		return Math.min(getHighestBlock(x, z) + 1, HEIGHT-1);
 	}
 	
 	@Override
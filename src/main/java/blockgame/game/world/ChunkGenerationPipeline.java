@@ -0,0 +1,98 @@
+package blockgame.game.world;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates chunks on a pool of worker threads. Each chunk is filled while detached from the
+ * world (loaded from storage or run through {@link WorldGeneration}) and only then published with
+ * {@link World#publishChunk(Chunk)}, so the world lock is held just long enough to insert it. Chunks
+ * that became ready to be lit are lit afterwards on the same worker, outside the world lock.
+ */
+public class ChunkGenerationPipeline {
+	private final World world;
+	private final ExecutorService executor;
+	private final int parallelism;
+	
+	/** Chunks submitted but not yet published */
+	private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+	
+	public ChunkGenerationPipeline(World world) {
+		this(world, Runtime.getRuntime().availableProcessors());
+	}
+	
+	public ChunkGenerationPipeline(World world, int parallelism) {
+		this(world, new ForkJoinPool(parallelism), parallelism);
+	}
+	
+	/**
+	 * @param world World chunks are published to
+	 * @param executor Executor running generation jobs
+	 * @param parallelism Amount of jobs the executor runs at once
+	 */
+	public ChunkGenerationPipeline(World world, ExecutorService executor, int parallelism) {
+		this.world = world;
+		this.executor = executor;
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Queue a chunk for generation. Does nothing if the same chunk position is already queued.
+	 * @param chunk Detached chunk to fill and publish
+	 * @return True if the chunk was queued.
+	 */
+	public boolean submit(Chunk chunk) {
+		final long key = ChunkMap.key(chunk.getX(), chunk.getZ());
+		if ( !pending.add(key) )
+			return false;
+		
+		executor.execute(() -> {
+			try {
+				world.prepareChunk(chunk);
+				world.publishChunk(chunk);
+			} catch (Throwable e) {
+				e.printStackTrace();
+			} finally {
+				pending.remove(key);
+			}
+		});
+		
+		return true;
+	}
+	
+	/**
+	 * @return True if the chunk at a chunk coordinate is queued or being generated.
+	 */
+	public boolean isPending(int x, int z) {
+		return pending.contains(ChunkMap.key(x, z));
+	}
+	
+	/**
+	 * @return The amount of chunks queued or being generated.
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+	
+	/**
+	 * @return The amount of chunks generated at once.
+	 */
+	public int getParallelism() {
+		return this.parallelism;
+	}
+	
+	/**
+	 * Stop accepting work and wait for the jobs already queued to finish.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+}
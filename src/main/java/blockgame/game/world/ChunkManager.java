@@ -3,84 +3,276 @@ package blockgame.game.world;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-import org.joml.Matrix4f;
 import org.joml.Vector3f;
-import org.joml.Vector4f;
-
-import blockgame.Application;
-import blockgame.Camera;
-import blockgame.MainGame;
-import blockgame.game.Location;
 
 public class ChunkManager {
 	
 	public static final Long RENDER_TIMEOUT = (long) 10000;
 	public static final Long UPDATE_TIMEOUT = (long) 250;
 	
-	public ChunkManager() {
+	/** View distance used when none is given */
+	public static final int DEFAULT_VIEW_DISTANCE = 8;
+	
+	/** Memory loaded chunks may use before chunks out of range are evicted, in bytes */
+	public static long MEMORY_BUDGET = 256L * 1024 * 1024;
+	
+	/** Chunks within this many chunks past the view distance are never evicted */
+	public static int EVICTION_MARGIN = 2;
+	
+	/** Time between eviction passes, in milliseconds */
+	public static final long EVICTION_INTERVAL = 1000;
+	
+	/** Upper bound of chunks queued for generation per worker thread */
+	public static final int PENDING_PER_THREAD = 4;
+	
+	protected final World world;
+	protected final ChunkGenerationPipeline pipeline;
+	
+	private final List<ChunkObserver> observers = new CopyOnWriteArrayList<ChunkObserver>();
+	private volatile int viewDistance;
+	private volatile boolean running = true;
+	private final Thread generationThread;
+	private long lastEviction;
+	
+	public ChunkManager(World world) {
+		this(world, DEFAULT_VIEW_DISTANCE);
+	}
+	
+	/**
+	 * @param world World to load chunks into
+	 * @param viewDistance Radius in chunks loaded around every observer
+	 */
+	public ChunkManager(World world, int viewDistance) {
+		this.world = world;
+		this.viewDistance = viewDistance;
+		this.pipeline = new ChunkGenerationPipeline(world);
+		
 		// Chunk Generation
-		new Thread(new Runnable() {
+		generationThread = new Thread(new Runnable() {
 
 			@Override
 			public void run() {
 				
-				while(true) {
+				while(running) {
 					try {
 						Thread.sleep(10);
 					} catch (InterruptedException e) {
 						//
 					}
 					
-					// Get camera
-					Camera camera = Application.camera;
-					final Vector3f cameraLocation = camera.getPosition();
-					Location loc = new Location(MainGame.world, cameraLocation.x, 0, cameraLocation.z);
+					if ( observers.isEmpty() )
+						continue;
 					
-					// Get chunk location for camera
-					int chunkX = loc.getChunkX();
-					int chunkZ = loc.getChunkZ();
-					int t = MainGame.VIEW_DISTANCE;
-					
-					// Find all nearby chunks
-					List<Chunk> chunksToGenerate = new ArrayList<Chunk>();
-					for (int i = chunkX-t; i <= chunkX+t; i++) {
-						for (int j = chunkZ-t; j <= chunkZ+t; j++) {
-							Chunk currentChunk = MainGame.world.getChunk(i, j);
-							
-							// Load the chunk into memory if it does not exist
-							if ( currentChunk == null ) {
-								chunksToGenerate.add(newChunk(loc.getWorld(), i, j));
-							}
+					try {
+						generateAroundObservers();
+						
+						if ( System.currentTimeMillis() - lastEviction > EVICTION_INTERVAL ) {
+							lastEviction = System.currentTimeMillis();
+							evictChunks();
 						}
+					} catch (Exception e) {
+						e.printStackTrace();
 					}
+				}
+			}
+			
+		}, "Chunk Generation");
+		generationThread.start();
+	}
+	
+	/**
+	 * Queue the missing chunks around every observer, nearest first.
+	 */
+	private void generateAroundObservers() {
+		// Get observer positions
+		final List<Vector3f> positions = new ArrayList<Vector3f>();
+		for (ChunkObserver observer : observers) {
+			positions.add(observer.getPosition());
+		}
+		
+		// Find all nearby chunks. One ring past the view distance, so chunks at the edge have all eight
+		// neighbours and can be lit and meshed.
+		int t = viewDistance + 1;
+		Set<Long> found = new HashSet<Long>();
+		List<Chunk> chunksToGenerate = new ArrayList<Chunk>();
+		for (Vector3f position : positions) {
+			int chunkX = (int)Math.floor(position.x/(float)Chunk.WIDTH);
+			int chunkZ = (int)Math.floor(position.z/(float)Chunk.DEPTH);
+			
+			for (int i = chunkX-t; i <= chunkX+t; i++) {
+				for (int j = chunkZ-t; j <= chunkZ+t; j++) {
+					Chunk currentChunk = world.getChunk(i, j);
 					
-					// Sort based on camera location
-					Collections.sort(chunksToGenerate, new Comparator<Chunk>() {
-						@Override
-						public int compare(Chunk c1, Chunk c2) {
-							return (int) (c1.getWorldLocation().toVector3f().distanceSquared(cameraLocation) - c2.getWorldLocation().toVector3f().distanceSquared(cameraLocation));
-						}
-					});
-					
-					// Compute camera matrices
-					Matrix4f viewMatrix = camera.getViewMatrix();
-					Matrix4f projectionMatrix = camera.getProjectionMatrix();
-					Matrix4f viewProjectionMatrix = projectionMatrix.mul(viewMatrix, new Matrix4f());
-					
-					// Generate new chunks
-					for (int i = 0; i < chunksToGenerate.size(); i++) {
-						Chunk chunk = chunksToGenerate.get(i);
-						
-						if ( isChunkInFrustum( viewProjectionMatrix, chunk) ) {
-							loc.getWorld().loadChunk(chunk, true);
-						}
+					// Load the chunk into memory if it does not exist
+					if ( currentChunk == null && !pipeline.isPending(i, j) && found.add(ChunkMap.key(i, j)) ) {
+						chunksToGenerate.add(newChunk(world, i, j));
+					} else if ( currentChunk != null ) {
+						currentChunk.touch();
 					}
 				}
 			}
+		}
+		
+		// Sort based on distance to the closest observer
+		final Map<Chunk, Float> distance = new HashMap<Chunk, Float>();
+		for (Chunk chunk : chunksToGenerate) {
+			Vector3f chunkPosition = chunk.getWorldLocation().toVector3f();
+			float closest = Float.MAX_VALUE;
+			for (Vector3f position : positions) {
+				closest = Math.min(closest, chunkPosition.distanceSquared(position.x, 0, position.z));
+			}
+			distance.put(chunk, closest);
+		}
+		Collections.sort(chunksToGenerate, new Comparator<Chunk>() {
+			@Override
+			public int compare(Chunk c1, Chunk c2) {
+				return Float.compare(distance.get(c1), distance.get(c2));
+			}
+		});
+		
+		// Queue new chunks, nearest first. Keep the queue short so it follows the observers.
+		int maxPending = pipeline.getParallelism() * PENDING_PER_THREAD;
+		for (int i = 0; i < chunksToGenerate.size(); i++) {
+			if ( pipeline.getPendingCount() >= maxPending )
+				break;
+			
+			Chunk chunk = chunksToGenerate.get(i);
 			
-		}).start();
+			if ( shouldGenerate(chunk) ) {
+				pipeline.submit(chunk);
+			}
+		}
+	}
+	
+	/**
+	 * Remove chunks out of range of every observer while loaded chunks use more than
+	 * {@link #MEMORY_BUDGET}. The chunks observed least recently go first, then the farthest.
+	 */
+	private void evictChunks() {
+		// Observer positions, in chunk-space
+		final List<int[]> positions = new ArrayList<int[]>();
+		for (ChunkObserver observer : observers) {
+			Vector3f position = observer.getPosition();
+			positions.add(new int[] { (int)Math.floor(position.x/(float)Chunk.WIDTH), (int)Math.floor(position.z/(float)Chunk.DEPTH) });
+		}
+		
+		// Copy chunk list
+		List<Chunk> loadedChunks;
+		List<Chunk> chunks = world.getLoadedChunks();
+		synchronized(chunks) {
+			loadedChunks = new ArrayList<Chunk>(chunks);
+		}
+		
+		// Find memory usage and chunks that may be evicted
+		int range = viewDistance + EVICTION_MARGIN;
+		long usage = 0;
+		final Map<Chunk, Integer> distance = new HashMap<Chunk, Integer>();
+		final Map<Chunk, Long> memory = new HashMap<Chunk, Long>();
+		for (Chunk chunk : loadedChunks) {
+			long bytes = chunk.getMemoryUsage();
+			usage += bytes;
+			
+			int closest = Integer.MAX_VALUE;
+			for (int[] position : positions) {
+				closest = Math.min(closest, Math.max(Math.abs(chunk.getX()-position[0]), Math.abs(chunk.getZ()-position[1])));
+			}
+			
+			if ( closest > range ) {
+				distance.put(chunk, closest);
+				memory.put(chunk, bytes);
+			}
+		}
+		
+		if ( usage <= MEMORY_BUDGET )
+			return;
+		
+		// Least recently observed first, farthest first on ties
+		List<Chunk> candidates = new ArrayList<Chunk>(distance.keySet());
+		Collections.sort(candidates, new Comparator<Chunk>() {
+			@Override
+			public int compare(Chunk c1, Chunk c2) {
+				int c = Long.compare(c1.getLastObserved(), c2.getLastObserved());
+				if ( c != 0 )
+					return c;
+				return Integer.compare(distance.get(c2), distance.get(c1));
+			}
+		});
+		
+		for (int i = 0; i < candidates.size() && usage > MEMORY_BUDGET; i++) {
+			Chunk chunk = candidates.get(i);
+			if ( world.unloadChunk(chunk) )
+				usage -= memory.get(chunk);
+		}
+	}
+	
+	/**
+	 * Filter applied to missing chunks before they are queued. Generates everything by default.
+	 * @param chunk
+	 */
+	protected boolean shouldGenerate(Chunk chunk) {
+		return true;
+	}
+	
+	/**
+	 * Start loading chunks around an observer.
+	 * @param observer
+	 */
+	public void addObserver(ChunkObserver observer) {
+		observers.add(observer);
+	}
+	
+	/**
+	 * Stop loading chunks around an observer. Chunks already loaded stay loaded.
+	 * @param observer
+	 */
+	public void removeObserver(ChunkObserver observer) {
+		observers.remove(observer);
+	}
+	
+	/**
+	 * @return Radius in chunks loaded around every observer.
+	 */
+	public int getViewDistance() {
+		return this.viewDistance;
+	}
+	
+	public void setViewDistance(int viewDistance) {
+		this.viewDistance = viewDistance;
+	}
+	
+	/**
+	 * @return The amount of chunks queued or being generated.
+	 */
+	public int getPendingCount() {
+		return pipeline.getPendingCount();
+	}
+	
+	/**
+	 * Stop the generation thread and pipeline. Queued chunks still finish; returns once they are
+	 * published and nothing else will be loaded, saved or evicted.
+	 */
+	public void shutdown() {
+		running = false;
+		try {
+			generationThread.join();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		pipeline.shutdown();
+	}
+	
+	/**
+	 * @return False once {@link #shutdown()} was called.
+	 */
+	protected boolean isRunning() {
+		return this.running;
 	}
 	
 	protected Chunk newChunk(World world, int i, int j) {
@@ -88,28 +280,8 @@ public class ChunkManager {
 	}
 	
 	protected boolean isChunkNear(Vector3f eyePosition, Chunk chunk) {
-		Chunk eyeChunk = MainGame.world.getChunkAt(eyePosition.x, eyePosition.z);
+		Chunk eyeChunk = world.getChunkAt(eyePosition.x, eyePosition.z);
 		final float minDist = 2.5f;
 		return eyeChunk.getLocation().distanceSquared(chunk.getLocation()) < minDist*minDist;
 	}
-	
-	protected boolean isChunkInFrustum(Matrix4f viewProjectionMatrix, Chunk chunk) {
-		Location worldLocation = chunk.getWorldLocation();
-		Vector4f worldPosition1 = new Vector4f( worldLocation.getX(), worldLocation.getY() + Chunk.HEIGHT/2, worldLocation.getZ(), 1.0f );
-		Vector4f worldPosition2 = new Vector4f( worldLocation.getX() + Chunk.WIDTH, worldLocation.getY() + Chunk.HEIGHT/2, worldLocation.getZ(), 1.0f );
-		Vector4f worldPosition3 = new Vector4f( worldLocation.getX() + Chunk.WIDTH, worldLocation.getY() + Chunk.HEIGHT/2, worldLocation.getZ() + Chunk.DEPTH, 1.0f );
-		Vector4f worldPosition4 = new Vector4f( worldLocation.getX(), worldLocation.getY() + Chunk.HEIGHT/2, worldLocation.getZ() + Chunk.DEPTH, 1.0f );
-		Vector4f worldPosition5 = new Vector4f( worldLocation.getX() + Chunk.WIDTH/2f, worldLocation.getY() + Chunk.HEIGHT/2, worldLocation.getZ() + Chunk.DEPTH/2f, 1.0f );
-		
-		return testPoint( viewProjectionMatrix, worldPosition1 )
-				|| testPoint( viewProjectionMatrix, worldPosition2 )
-				|| testPoint( viewProjectionMatrix, worldPosition3 )
-				|| testPoint( viewProjectionMatrix, worldPosition4 )
-				|| testPoint( viewProjectionMatrix, worldPosition5 );
-	}
-	
-	protected boolean testPoint( Matrix4f viewProjectionMatrix, Vector4f worldPosition ) {
-		Vector4f projected = viewProjectionMatrix.transform(worldPosition, new Vector4f());
-		return projected.z > 0;
-	}
 }
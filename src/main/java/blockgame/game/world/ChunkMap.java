@@ -0,0 +1,151 @@
+package blockgame.game.world;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from chunk coordinates to chunks, keyed by a primitive long.
+ * <br>
+ * <br>
+ * Reads never lock or allocate. Writes are serialized and build a new table which is then
+ * published through a volatile field, so a reader always probes a complete, consistent table.
+ * Chunks are added and removed rarely compared to how often they are looked up.
+ */
+public class ChunkMap {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private volatile Table table = new Table(INITIAL_CAPACITY);
+	private int size;
+
+	/**
+	 * Pack a chunk coordinate into a map key.
+	 */
+	public static long key( int x, int z ) {
+		return (long) x << 32 | (z & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Returns the chunk at a chunk coordinate, or null.
+	 */
+	public Chunk get( int x, int z ) {
+		Table t = this.table;
+		long key = key(x, z);
+		long[] keys = t.keys;
+		Chunk[] values = t.values;
+		int mask = t.mask;
+
+		for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+			Chunk value = values[i];
+			if ( value == null )
+				return null;
+			if ( keys[i] == key )
+				return value;
+		}
+	}
+
+	/**
+	 * Insert a chunk, keyed by its own coordinates.
+	 * @return The chunk previously stored at the same coordinate, or null.
+	 */
+	public synchronized Chunk put( Chunk chunk ) {
+		Table old = this.table;
+
+		// Keep the load factor at or below one half
+		int capacity = old.values.length;
+		if ( (size + 1) * 2 > capacity )
+			capacity *= 2;
+
+		Table t = old.copy(capacity);
+		Chunk previous = t.insert(key(chunk.getX(), chunk.getZ()), chunk);
+		if ( previous == null )
+			size++;
+
+		this.table = t;
+		return previous;
+	}
+
+	/**
+	 * Remove the chunk at a chunk coordinate.
+	 * @return The removed chunk, or null.
+	 */
+	public synchronized Chunk remove( int x, int z ) {
+		Chunk previous = get(x, z);
+		if ( previous == null )
+			return null;
+
+		// Rebuild without the entry. Avoids tombstones in the probe chains.
+		Table old = this.table;
+		Table t = new Table(old.values.length);
+		long key = key(x, z);
+		for (int i = 0; i < old.values.length; i++) {
+			if ( old.values[i] != null && old.keys[i] != key )
+				t.insert(old.keys[i], old.values[i]);
+		}
+
+		size--;
+		this.table = t;
+		return previous;
+	}
+
+	/**
+	 * @return The amount of chunks in the map.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	private static int hash( long key ) {
+		// 64 bit finalizer from MurmurHash3
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	private static class Table {
+		final long[] keys;
+		final Chunk[] values;
+		final int mask;
+
+		Table( int capacity ) {
+			this.keys = new long[capacity];
+			this.values = new Chunk[capacity];
+			this.mask = capacity - 1;
+		}
+
+		Table copy( int capacity ) {
+			if ( capacity == values.length )
+				return new Table(capacity, Arrays.copyOf(keys, capacity), Arrays.copyOf(values, capacity));
+
+			Table t = new Table(capacity);
+			for (int i = 0; i < values.length; i++) {
+				if ( values[i] != null )
+					t.insert(keys[i], values[i]);
+			}
+			return t;
+		}
+
+		private Table( int capacity, long[] keys, Chunk[] values ) {
+			this.keys = keys;
+			this.values = values;
+			this.mask = capacity - 1;
+		}
+
+		Chunk insert( long key, Chunk value ) {
+			for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+				Chunk existing = values[i];
+				if ( existing == null ) {
+					keys[i] = key;
+					values[i] = value;
+					return null;
+				}
+
+				if ( keys[i] == key ) {
+					values[i] = value;
+					return existing;
+				}
+			}
+		}
+	}
+}
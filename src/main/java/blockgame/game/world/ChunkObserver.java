@@ -0,0 +1,14 @@
+package blockgame.game.world;
+
+import org.joml.Vector3f;
+
+/**
+ * Something chunks should be loaded around, such as the camera or a player.
+ */
+public interface ChunkObserver {
+	
+	/**
+	 * @return The observer's position. This is in block-space.
+	 */
+	public Vector3f getPosition();
+}
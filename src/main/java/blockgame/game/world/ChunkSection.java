@@ -0,0 +1,324 @@
+package blockgame.game.world;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+import blockgame.game.BlockData;
+
+/**
+ * A 16x16x16 slice of a chunk column. A section starts out uniform (every block the same id, no
+ * per-block storage). The first differing write switches it to a palette where every block is a
+ * 1, 2, 4 or 8 bit index packed into longs. At 8 bits the palette is bypassed and the block id is
+ * stored directly.
+ * <br>
+ * <br>
+ * Writes take a lock, so one write never sees another half done. Reads are optimistic: they run without the
+ * lock and are retried under it if a write happened at the same time. Mesh workers can read a section
+ * while the world writes to it.
+ */
+public class ChunkSection {
+	public static final int SIZE = 16;
+	public static final int VOLUME = SIZE * SIZE * SIZE;
+	
+	/** Upper bound of the bytes written by {@link #write(ByteBuffer)} */
+	public static final int MAX_SERIALIZED_BYTES = 2 + 256 + VOLUME;
+
+	/** Value of every block while the section is uniform */
+	private byte uniformId;
+
+	/** Palette entries. Index into this array is what gets stored per block */
+	private byte[] palette;
+	private int paletteSize;
+
+	/** Packed palette indices. Null while uniform. Bits per block is data.length / 64 */
+	private long[] data;
+
+	/** Blocks that are not air. The section returns to uniform air when this reaches 0 */
+	private int nonAirBlocks;
+
+	private final StampedLock lock = new StampedLock();
+
+	public ChunkSection() {
+		this( (byte) BlockData.AIR.getId() );
+	}
+
+	public ChunkSection(byte uniformId) {
+		this.uniformId = uniformId;
+		this.nonAirBlocks = uniformId == BlockData.AIR.getId() ? 0 : VOLUME;
+	}
+
+	/**
+	 * Returns the block id at a section-local position. Coordinates are not bounds checked.
+	 */
+	public byte get( int x, int y, int z ) {
+		int index = x << 8 | z << 4 | y;
+		long stamp = lock.tryOptimisticRead();
+		byte blockId = read( index );
+		if ( lock.validate(stamp) )
+			return blockId;
+
+		// A write happened while reading, so the fields may not have matched each other
+		stamp = lock.readLock();
+		try {
+			return read( index );
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Read a block without the lock. During an optimistic read the palette and data may be from
+	 * different writes, so nothing here can throw and the result is only used once validated.
+	 */
+	private byte read( int index ) {
+		long[] data = this.data;
+		byte[] palette = this.palette;
+		if ( data == null )
+			return uniformId;
+
+		int bits = data.length >> 6;
+		int value = read( data, bits, index );
+
+		if ( bits == 8 )
+			return (byte) value;
+
+		if ( palette == null || value >= palette.length )
+			return uniformId;
+
+		return palette[value];
+	}
+
+	/**
+	 * Sets the block id at a section-local position. Coordinates are not bounds checked.
+	 */
+	public void set( int x, int y, int z, byte blockId ) {
+		long stamp = lock.writeLock();
+		try {
+			store( x << 8 | z << 4 | y, blockId );
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	private void store( int index, byte blockId ) {
+		if ( data == null ) {
+			if ( blockId == uniformId )
+				return;
+
+			// Leave uniform mode. Entry 0 is the old uniform value, so zeroed data is already correct.
+			byte[] newPalette = new byte[2];
+			newPalette[0] = uniformId;
+			palette = newPalette;
+			paletteSize = 1;
+			data = new long[64];
+		}
+
+		int bits = data.length >> 6;
+		int value;
+		if ( bits == 8 ) {
+			value = blockId & 0xFF;
+		} else {
+			value = indexOf(blockId);
+			if ( value == -1 ) {
+				if ( paletteSize == (1 << bits) ) {
+					grow();
+					store( index, blockId );
+					return;
+				}
+
+				palette[paletteSize] = blockId;
+				value = paletteSize++;
+			}
+		}
+
+		int old = read( data, bits, index );
+		byte oldId = bits == 8 ? (byte) old : palette[old];
+		write( data, bits, index, value );
+
+		// Drop per-block storage once the section is back to all air
+		byte air = BlockData.AIR.getId();
+		if ( oldId == air && blockId != air ) {
+			nonAirBlocks++;
+		} else if ( oldId != air && blockId == air && --nonAirBlocks == 0 ) {
+			setUniform( air );
+		}
+	}
+
+	/**
+	 * Sets every block in this section to the same id and releases per-block storage.
+	 */
+	public void fill( byte blockId ) {
+		long stamp = lock.writeLock();
+		try {
+			setUniform( blockId );
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	private void setUniform( byte blockId ) {
+		this.uniformId = blockId;
+		this.data = null;
+		this.palette = null;
+		this.paletteSize = 0;
+		this.nonAirBlocks = blockId == BlockData.AIR.getId() ? 0 : VOLUME;
+	}
+
+	/**
+	 * @return True if every block in this section has the same id.
+	 */
+	public boolean isUniform() {
+		return data == null;
+	}
+
+	/**
+	 * @return True if every block in this section is air.
+	 */
+	public boolean isEmpty() {
+		return data == null && uniformId == BlockData.AIR.getId();
+	}
+
+	/**
+	 * @return The amount of bits stored per block. 0 while uniform.
+	 */
+	public int getBitsPerBlock() {
+		long[] data = this.data;
+		return data == null ? 0 : data.length >> 6;
+	}
+
+	/**
+	 * @return Approximate heap memory used by this section in bytes.
+	 */
+	public int getMemoryUsage() {
+		long[] data = this.data;
+		byte[] palette = this.palette;
+		int bytes = 80;
+		if ( data != null )
+			bytes += 16 + data.length * 8;
+		if ( palette != null )
+			bytes += 16 + palette.length;
+		return bytes;
+	}
+
+	/**
+	 * Serialize this section into a buffer.
+	 * @param out
+	 */
+	public void write( ByteBuffer out ) {
+		long stamp = lock.readLock();
+		try {
+			if ( data == null ) {
+				out.put((byte) 0);
+				out.put(uniformId);
+				return;
+			}
+
+			int bits = data.length >> 6;
+			out.put((byte) bits);
+			if ( bits < 8 ) {
+				out.put((byte) paletteSize);
+				out.put(palette, 0, paletteSize);
+			}
+
+			// Bulk copy of the packed longs
+			out.asLongBuffer().put(data);
+			out.position(out.position() + data.length * 8);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Replace the contents of this section with data written by {@link #write(ByteBuffer)}.
+	 * @param in
+	 */
+	public void read( ByteBuffer in ) {
+		int bits = in.get();
+		if ( bits == 0 ) {
+			fill(in.get());
+			return;
+		}
+
+		byte[] newPalette = null;
+		int size = 0;
+		if ( bits < 8 ) {
+			newPalette = new byte[1 << bits];
+			size = in.get() & 0xFF;
+			in.get(newPalette, 0, size);
+		}
+
+		long[] newData = new long[bits << 6];
+		in.asLongBuffer().get(newData);
+		in.position(in.position() + newData.length * 8);
+
+		long stamp = lock.writeLock();
+		try {
+			palette = newPalette;
+			paletteSize = size;
+			data = newData;
+			nonAirBlocks = 0;
+			for (int i = 0; i < VOLUME; i++) {
+				if ( read(i) != BlockData.AIR.getId() )
+					nonAirBlocks++;
+			}
+
+			// Older saves may hold sections that were edited back to air
+			if ( nonAirBlocks == 0 )
+				setUniform( BlockData.AIR.getId() );
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	private int indexOf( byte blockId ) {
+		byte[] palette = this.palette;
+		for (int i = 0; i < paletteSize; i++) {
+			if ( palette[i] == blockId )
+				return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Double the bits per block, repacking every entry.
+	 */
+	private void grow() {
+		long[] oldData = data;
+		int oldBits = oldData.length >> 6;
+		int newBits = oldBits * 2;
+
+		long[] newData = new long[newBits << 6];
+		for (int i = 0; i < VOLUME; i++) {
+			int value = read( oldData, oldBits, i );
+
+			// 8 bits stores ids directly
+			if ( newBits == 8 )
+				value = palette[value] & 0xFF;
+
+			write( newData, newBits, i, value );
+		}
+
+		// At 8 bits ids are stored directly and the palette is no longer read
+		if ( newBits < 8 ) {
+			byte[] newPalette = new byte[1 << newBits];
+			System.arraycopy(palette, 0, newPalette, 0, paletteSize);
+			palette = newPalette;
+		}
+
+		data = newData;
+	}
+
+	private static int read( long[] data, int bits, int index ) {
+		int bitIndex = index * bits;
+		return (int) (data[bitIndex >> 6] >>> (bitIndex & 63)) & ((1 << bits) - 1);
+	}
+
+	private static void write( long[] data, int bits, int index, int value ) {
+		int bitIndex = index * bits;
+		int shift = bitIndex & 63;
+		long mask = ((1L << bits) - 1) << shift;
+		int word = bitIndex >> 6;
+		data[word] = (data[word] & ~mask) | (((long) value << shift) & mask);
+	}
+}
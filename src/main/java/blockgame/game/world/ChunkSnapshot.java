@@ -0,0 +1,182 @@
+package blockgame.game.world;
+
+import java.util.Arrays;
+
+import blockgame.game.BlockData;
+
+/**
+ * A copy of a chunk's blocks and light plus a one block border taken from its eight neighbours.
+ * Meshing reads only from the snapshot, so every neighbour test is a plain array access
+ * and generation may keep writing to the live chunks while a mesh is built.
+ * <br>
+ * <br>
+ * Local coordinates range from -1 to WIDTH/HEIGHT/DEPTH inclusive. Blocks above and below the
+ * world, or in neighbours that are not loaded, read as air lit by the sky.
+ */
+public class ChunkSnapshot {
+	public static final int SIZE_X = Chunk.WIDTH + 2;
+	public static final int SIZE_Y = Chunk.HEIGHT + 2;
+	public static final int SIZE_Z = Chunk.DEPTH + 2;
+
+	private final byte[] blocks = new byte[SIZE_X * SIZE_Y * SIZE_Z];
+	
+	/** Sky light in the high nibble, block light in the low nibble */
+	private final byte[] light = new byte[SIZE_X * SIZE_Y * SIZE_Z];
+	
+	private static final byte SKY_LIT = (byte) (BlockData.MAX_LIGHT << 4);
+	private final boolean[] emptySections = new boolean[Chunk.SECTIONS];
+
+	private int x;
+	private int z;
+
+	/**
+	 * Copy a chunk and the border of its neighbours into this snapshot. The snapshot can be reused.
+	 * @param chunk
+	 */
+	public void capture( Chunk chunk ) {
+		capture( chunk, Chunk.ALL_SECTIONS );
+	}
+
+	/**
+	 * Copy the given sections of a chunk, plus one block above and below them, and the border of its
+	 * neighbours next to them. Blocks outside that range read as air.
+	 * @param chunk
+	 * @param sections One bit per section index
+	 */
+	public void capture( Chunk chunk, int sections ) {
+		World world = chunk.getWorld();
+		this.x = chunk.getX();
+		this.z = chunk.getZ();
+
+		byte air = BlockData.AIR.getId();
+		Arrays.fill(blocks, air);
+		Arrays.fill(light, SKY_LIT);
+		
+		// Height range to copy. Nothing when no sections are given.
+		sections &= Chunk.ALL_SECTIONS;
+		int minY = Math.max(0, Integer.numberOfTrailingZeros(sections) * ChunkSection.SIZE - 1);
+		int maxY = Math.min(Chunk.HEIGHT - 1, (32 - Integer.numberOfLeadingZeros(sections)) * ChunkSection.SIZE);
+
+		// Chunk itself. Empty sections are already air.
+		for (int s = 0; s < Chunk.SECTIONS; s++) {
+			ChunkSection section = chunk.getSection(s);
+			emptySections[s] = section.isEmpty();
+			if ( emptySections[s] )
+				continue;
+
+			int sectionY = s * ChunkSection.SIZE;
+			int from = Math.max(sectionY, minY) - sectionY;
+			int to = Math.min(sectionY + ChunkSection.SIZE - 1, maxY) - sectionY;
+			if ( from > to )
+				continue;
+			
+			for (int i = 0; i < Chunk.WIDTH; i++) {
+				for (int k = 0; k < Chunk.DEPTH; k++) {
+					int base = index(i, sectionY, k);
+					for (int j = from; j <= to; j++) {
+						blocks[base + j] = section.get(i, j, k);
+					}
+				}
+			}
+		}
+		
+		// Light, including sections without blocks
+		for (int i = 0; i < Chunk.WIDTH; i++) {
+			for (int k = 0; k < Chunk.DEPTH; k++) {
+				int base = index(i, 0, k);
+				for (int j = minY; j <= maxY; j++) {
+					light[base + j] = packLight(chunk, i, j, k);
+				}
+			}
+		}
+
+		// Border from the eight neighbours
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dz = -1; dz <= 1; dz++) {
+				if ( dx == 0 && dz == 0 )
+					continue;
+
+				Chunk neighbour = world.getChunk(x + dx, z + dz);
+				if ( neighbour == null )
+					continue;
+
+				// Range of snapshot coordinates covered by this neighbour
+				int minX = dx < 0 ? -1 : dx > 0 ? Chunk.WIDTH : 0;
+				int maxX = dx < 0 ? -1 : dx > 0 ? Chunk.WIDTH : Chunk.WIDTH - 1;
+				int minZ = dz < 0 ? -1 : dz > 0 ? Chunk.DEPTH : 0;
+				int maxZ = dz < 0 ? -1 : dz > 0 ? Chunk.DEPTH : Chunk.DEPTH - 1;
+
+				for (int i = minX; i <= maxX; i++) {
+					for (int k = minZ; k <= maxZ; k++) {
+						int localX = i - dx * Chunk.WIDTH;
+						int localZ = k - dz * Chunk.DEPTH;
+						int base = index(i, 0, k);
+						for (int j = minY; j <= maxY; j++) {
+							blocks[base + j] = neighbour.getBlockId(localX, j, localZ);
+							light[base + j] = packLight(neighbour, localX, j, localZ);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the block id at a local coordinate. Valid from -1 to WIDTH/HEIGHT/DEPTH inclusive.
+	 */
+	public byte getBlockId( int x, int y, int z ) {
+		return blocks[index(x, y, z)];
+	}
+
+	/**
+	 * Returns the sky light level at a local coordinate. Valid from -1 to WIDTH/HEIGHT/DEPTH inclusive.
+	 */
+	public int getSkyLight( int x, int y, int z ) {
+		return (light[index(x, y, z)] >> 4) & 15;
+	}
+
+	/**
+	 * Returns the block light level at a local coordinate. Valid from -1 to WIDTH/HEIGHT/DEPTH inclusive.
+	 */
+	public int getBlockLight( int x, int y, int z ) {
+		return light[index(x, y, z)] & 15;
+	}
+
+	/**
+	 * Returns the brighter of sky and block light at a local coordinate.
+	 */
+	public int getLight( int x, int y, int z ) {
+		int value = light[index(x, y, z)];
+		return Math.max((value >> 4) & 15, value & 15);
+	}
+
+	/**
+	 * @param index Section index, y >> 4
+	 * @return True if the section of the captured chunk only contains air.
+	 */
+	public boolean isSectionEmpty( int index ) {
+		return emptySections[index];
+	}
+
+	/**
+	 * @return Chunk x coordinate of the captured chunk. This is in chunk-space.
+	 */
+	public int getX() {
+		return this.x;
+	}
+
+	/**
+	 * @return Chunk z coordinate of the captured chunk. This is in chunk-space.
+	 */
+	public int getZ() {
+		return this.z;
+	}
+
+	private static byte packLight( Chunk chunk, int x, int y, int z ) {
+		return (byte) (chunk.getSkyLight(x, y, z) << 4 | chunk.getBlockLight(x, y, z));
+	}
+
+	private static int index( int x, int y, int z ) {
+		return ((x + 1) * SIZE_Z + (z + 1)) * SIZE_Y + (y + 1);
+	}
+}
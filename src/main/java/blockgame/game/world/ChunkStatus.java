@@ -0,0 +1,35 @@
+package blockgame.game.world;
+
+/**
+ * Stages a chunk moves through, in order. A chunk only moves forward, except that an
+ * {@link #UNLOADING} chunk that comes back into view is meshed again.
+ */
+public enum ChunkStatus {
+	/** Created, no blocks yet */
+	EMPTY,
+
+	/** Ground, stone and sand placed */
+	TERRAIN,
+
+	/** Caves carved out */
+	CAVES,
+
+	/** Trees, bedrock and water placed. Chunks read from storage start here */
+	DECORATED,
+
+	/** Every neighbour is decorated, so no more blocks spill in from them. Ready to be lit and meshed */
+	LIGHTED,
+
+	/** Has a mesh built from its current neighbours */
+	MESHED,
+
+	/** Out of view. Its mesh is being hidden and it may be evicted */
+	UNLOADING;
+
+	/**
+	 * @return True if this stage is the given stage or comes after it.
+	 */
+	public boolean isAtLeast(ChunkStatus status) {
+		return this.ordinal() >= status.ordinal();
+	}
+}
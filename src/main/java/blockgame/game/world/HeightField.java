@@ -0,0 +1,92 @@
+package blockgame.game.world;
+
+/**
+ * Height, moisture and slope of every column of a chunk plus a border around it. Computed once
+ * per chunk into flat arrays and shared by every generation pass, so each column's noise is only
+ * evaluated once.
+ * <br>
+ * <br>
+ * Local coordinates range from -{@link #BORDER_MIN} to WIDTH/DEPTH + {@link #BORDER_MAX} exclusive.
+ * Slope is only available inside the chunk and {@link #SLOPE_BORDER} columns around it.
+ */
+public class HeightField {
+	/** Columns sampled before the chunk on each axis */
+	public static final int BORDER_MIN = 3;
+
+	/** Columns sampled after the chunk on each axis */
+	public static final int BORDER_MAX = 6;
+
+	/** Columns around the chunk with a slope, enough for trees rooted next to the chunk */
+	public static final int SLOPE_BORDER = 2;
+
+	public static final int SIZE_X = BORDER_MIN + Chunk.WIDTH + BORDER_MAX;
+	public static final int SIZE_Z = BORDER_MIN + Chunk.DEPTH + BORDER_MAX;
+
+	private static final int SLOPE_SIZE_X = Chunk.WIDTH + SLOPE_BORDER * 2;
+	private static final int SLOPE_SIZE_Z = Chunk.DEPTH + SLOPE_BORDER * 2;
+
+	private final double[] moisture = new double[SIZE_X * SIZE_Z];
+	private final double[] height = new double[SIZE_X * SIZE_Z];
+	private final double[] slope = new double[SLOPE_SIZE_X * SLOPE_SIZE_Z];
+
+	/**
+	 * Fill this field for a chunk. The field can be reused.
+	 * @param chunk
+	 * @param generation Generator the noise is taken from
+	 */
+	public void compute(Chunk chunk, WorldGeneration generation) {
+		int originX = chunk.getX() * Chunk.WIDTH - BORDER_MIN;
+		int originZ = chunk.getZ() * Chunk.DEPTH - BORDER_MIN;
+
+		// Moisture first, height depends on it
+		for (int i = 0; i < SIZE_X; i++) {
+			for (int j = 0; j < SIZE_Z; j++) {
+				moisture[i * SIZE_Z + j] = generation.getMoisture(originX + i, originZ + j);
+			}
+		}
+
+		for (int i = 0; i < SIZE_X; i++) {
+			for (int j = 0; j < SIZE_Z; j++) {
+				int index = i * SIZE_Z + j;
+				height[index] = generation.naturalHeight(originX + i, originZ + j, moisture[index]);
+			}
+		}
+
+		// Slope from the four direct neighbours
+		for (int i = -SLOPE_BORDER; i < Chunk.WIDTH + SLOPE_BORDER; i++) {
+			for (int j = -SLOPE_BORDER; j < Chunk.DEPTH + SLOPE_BORDER; j++) {
+				double h1 = getHeight(i-1, j);
+				double h2 = getHeight(i+1, j);
+				double h3 = getHeight(i, j-1);
+				double h4 = getHeight(i, j+1);
+				double h5 = getHeight(i, j);
+
+				double average = (h1+h2+h3+h4)/4d;
+				double min = Math.min(Math.min(h1, h2), Math.min(h3, Math.min(h4, h5)));
+				double max = Math.max(Math.max(h1, h2), Math.max(h3, Math.max(h4, h5)));
+				slope[(i + SLOPE_BORDER) * SLOPE_SIZE_Z + (j + SLOPE_BORDER)] = (max-average)/(min-average);
+			}
+		}
+	}
+
+	/**
+	 * Returns the natural ground height of a column. Coordinates are chunk-local.
+	 */
+	public double getHeight(int x, int z) {
+		return height[(x + BORDER_MIN) * SIZE_Z + (z + BORDER_MIN)];
+	}
+
+	/**
+	 * Returns the moisture of a column, between 0 and 1. Coordinates are chunk-local.
+	 */
+	public double getMoisture(int x, int z) {
+		return moisture[(x + BORDER_MIN) * SIZE_Z + (z + BORDER_MIN)];
+	}
+
+	/**
+	 * Returns the slope of a column. Only valid inside the chunk and {@link #SLOPE_BORDER} columns around it.
+	 */
+	public double getSlope(int x, int z) {
+		return slope[(x + SLOPE_BORDER) * SLOPE_SIZE_Z + (z + SLOPE_BORDER)];
+	}
+}
@@ -0,0 +1,458 @@
+package blockgame.game.world;
+
+import java.util.Arrays;
+
+import blockgame.game.BlockData;
+
+/**
+ * Flood fill propagation of sky light and block light.
+ * <br>
+ * <br>
+ * Light spreads breadth first from a queue of cells, losing one level per block (more through
+ * blocks with an opacity). Sky light at full strength falls straight down through clear blocks
+ * without losing any. A chunk is first lit with {@link #lightChunk(World, Chunk)}, which fills the
+ * open sky of each column and spreads from there. Block changes afterwards go through
+ * {@link #updateBlock(World, int, int, int)} or {@link #updateBlocks(World, Chunk, int[], int)},
+ * which clear the light that came through the changed cells and fill the hole back in from their surroundings.
+ * <br>
+ * <br>
+ * Work is limited to a chunk and its eight neighbours, which is as far as light travels. Sections
+ * whose light changed are flagged for a mesh update. Queues are kept between calls, so lighting
+ * does not allocate once they have grown. An engine is not thread-safe.
+ */
+public class LightEngine {
+	private static final int SKY = 0;
+	private static final int BLOCK = 1;
+
+	/** Size of the region along x and z, in blocks */
+	private static final int REGION_SIZE = Chunk.WIDTH * 3;
+
+	/** Neighbour directions. Index 0 is down */
+	private static final int[] DX = { 0, 0, -1, 1, 0, 0 };
+	private static final int[] DY = { -1, 1, 0, 0, 0, 0 };
+	private static final int[] DZ = { 0, 0, 0, 0, -1, 1 };
+	private static final int DOWN = 0;
+
+	/** Chunks around the one being lit, indexed by {@link #regionIndex(int, int)} */
+	private final Chunk[] region = new Chunk[9];
+
+	/** Sections of each region chunk with changed light */
+	private final int[] changed = new int[9];
+
+	/** Highest block + 1 of each column of the center chunk and a one column border */
+	private final int[] tops = new int[(Chunk.WIDTH + 2) * (Chunk.DEPTH + 2)];
+
+	/** Cells to spread light from. x (6 bits), z (6 bits), y (7 bits) */
+	private int[] queue = new int[4096];
+	private int head;
+	private int tail;
+
+	/** Write used by {@link #updateBlock(World, int, int, int)} */
+	private final int[] single = new int[1];
+
+	/** Cells to clear light from, with the level they had in bits 19 and up */
+	private int[] removeQueue = new int[1024];
+	private int removeHead;
+	private int removeTail;
+
+	/**
+	 * Compute the light of a chunk and spread it into its neighbours. Light already in the chunk,
+	 * for example spread in from a neighbour, is kept.
+	 * @param world
+	 * @param chunk
+	 */
+	public void lightChunk( World world, Chunk chunk ) {
+		load(world, chunk.getX(), chunk.getZ());
+
+		// Sky light
+		findTops();
+		int fillFrom = fillOpenSections(chunk);
+		for (int i = 0; i < Chunk.WIDTH; i++) {
+			for (int k = 0; k < Chunk.DEPTH; k++) {
+				int rx = Chunk.WIDTH + i;
+				int rz = Chunk.DEPTH + k;
+				int top = tops[topIndex(i, k)];
+
+				// Scanline down the open part of the column
+				for (int y = Math.min(fillFrom, Chunk.HEIGHT) - 1; y >= top; y--) {
+					setLight(SKY, rx, y, rz, BlockData.MAX_LIGHT);
+				}
+
+				// Only spread sideways where the neighbouring columns are taller, and into the block under the column
+				int spreadTo = Math.max(top + 1, Math.max(
+						Math.max(tops[topIndex(i - 1, k)], tops[topIndex(i + 1, k)]),
+						Math.max(tops[topIndex(i, k - 1)], tops[topIndex(i, k + 1)])));
+				for (int y = top; y < spreadTo && y < Chunk.HEIGHT; y++) {
+					enqueue(rx, y, rz);
+				}
+			}
+		}
+		enqueueBorders(SKY);
+		propagate(SKY);
+
+		// Block light
+		for (int s = 0; s < Chunk.SECTIONS; s++) {
+			if ( chunk.isSectionEmpty(s) )
+				continue;
+
+			for (int i = 0; i < Chunk.WIDTH; i++) {
+				for (int k = 0; k < Chunk.DEPTH; k++) {
+					for (int y = s * ChunkSection.SIZE; y < (s + 1) * ChunkSection.SIZE; y++) {
+						int emission = BlockData.getLightEmission(chunk.getBlockId(i, y, k));
+						if ( emission > 0 && emission > chunk.getBlockLight(i, y, k) ) {
+							setLight(BLOCK, Chunk.WIDTH + i, y, Chunk.DEPTH + k, emission);
+							enqueue(Chunk.WIDTH + i, y, Chunk.DEPTH + k);
+						}
+					}
+				}
+			}
+		}
+		enqueueBorders(BLOCK);
+		propagate(BLOCK);
+
+		flush();
+	}
+
+	/**
+	 * Update light around a block that changed. Call after the block was set.
+	 * @param world
+	 * @param x Block x coordinate. This is in block-space.
+	 * @param y Block y coordinate. This is in block-space.
+	 * @param z Block z coordinate. This is in block-space.
+	 */
+	public void updateBlock( World world, int x, int y, int z ) {
+		if ( y < 0 || y >= Chunk.HEIGHT )
+			return;
+
+		Chunk chunk = world.getChunkAt(x, z);
+		if ( chunk == null )
+			return;
+
+		single[0] = Chunk.packWrite(x - chunk.getX() * Chunk.WIDTH, y, z - chunk.getZ() * Chunk.DEPTH, (byte) 0);
+		updateBlocks(world, chunk, single, 1);
+	}
+
+	/**
+	 * Update light around many blocks of one chunk that changed, in one pass. Call after the blocks were set.
+	 * @param world
+	 * @param chunk
+	 * @param writes Changed positions, packed with {@link Chunk#packWrite(int, int, int, byte)}. The block ids are ignored.
+	 * @param count Amount of writes to read from the array
+	 */
+	public void updateBlocks( World world, Chunk chunk, int[] writes, int count ) {
+		load(world, chunk.getX(), chunk.getZ());
+
+		for (int channel = SKY; channel <= BLOCK; channel++) {
+			// Take out all light that came through the changed cells
+			for (int i = 0; i < count; i++) {
+				int position = writes[i] >>> 8;
+				int rx = Chunk.WIDTH + (position >> 11);
+				int rz = Chunk.DEPTH + ((position >> 7) & 15);
+				int y = position & 127;
+
+				int level = getLight(channel, rx, y, rz);
+				if ( level > 0 ) {
+					setLight(channel, rx, y, rz, 0);
+					enqueueRemove(rx, y, rz, level);
+				}
+			}
+			propagateRemoval(channel);
+
+			for (int i = 0; i < count; i++) {
+				int position = writes[i] >>> 8;
+				int rx = Chunk.WIDTH + (position >> 11);
+				int rz = Chunk.DEPTH + ((position >> 7) & 15);
+				int y = position & 127;
+				byte blockId = chunk.getBlockId(rx & 15, y, rz & 15);
+
+				// Sources in the cell itself
+				if ( channel == BLOCK ) {
+					int emission = BlockData.getLightEmission(blockId);
+					if ( emission > 0 ) {
+						setLight(BLOCK, rx, y, rz, emission);
+						enqueue(rx, y, rz);
+					}
+				} else if ( y == Chunk.HEIGHT - 1 && BlockData.getOpacity(blockId) == 0 ) {
+					setLight(SKY, rx, y, rz, BlockData.MAX_LIGHT);
+					enqueue(rx, y, rz);
+				}
+
+				// Let the surroundings fill the cell back in
+				for (int d = 0; d < 6; d++) {
+					int nx = rx + DX[d];
+					int ny = y + DY[d];
+					int nz = rz + DZ[d];
+					if ( inRegion(nx, ny, nz) && getLight(channel, nx, ny, nz) > 0 )
+						enqueue(nx, ny, nz);
+				}
+			}
+			propagate(channel);
+		}
+
+		flush();
+	}
+
+	/**
+	 * Spread light from every queued cell.
+	 */
+	private void propagate( int channel ) {
+		while ( head < tail ) {
+			int entry = queue[head++];
+			int rx = entry & 63;
+			int rz = (entry >> 6) & 63;
+			int y = (entry >> 12) & 127;
+
+			int level = getLight(channel, rx, y, rz);
+			if ( level <= 1 )
+				continue;
+
+			for (int d = 0; d < 6; d++) {
+				int nx = rx + DX[d];
+				int ny = y + DY[d];
+				int nz = rz + DZ[d];
+				if ( !inRegion(nx, ny, nz) )
+					continue;
+
+				Chunk chunk = chunkAt(nx, nz);
+				if ( chunk == null )
+					continue;
+
+				int opacity = BlockData.getOpacity(chunk.getBlockId(nx & 15, ny, nz & 15));
+				if ( opacity >= BlockData.MAX_LIGHT )
+					continue;
+
+				int next = level - Math.max(1, opacity);
+				if ( channel == SKY && d == DOWN && level == BlockData.MAX_LIGHT && opacity == 0 )
+					next = BlockData.MAX_LIGHT;
+
+				if ( next <= getLight(channel, nx, ny, nz) )
+					continue;
+
+				setLight(channel, nx, ny, nz, next);
+				enqueue(nx, ny, nz);
+			}
+		}
+
+		head = 0;
+		tail = 0;
+	}
+
+	/**
+	 * Clear light that was spread from every cell in the remove queue. Cells lit from elsewhere
+	 * are queued to spread back into the cleared area.
+	 */
+	private void propagateRemoval( int channel ) {
+		while ( removeHead < removeTail ) {
+			int entry = removeQueue[removeHead++];
+			int rx = entry & 63;
+			int rz = (entry >> 6) & 63;
+			int y = (entry >> 12) & 127;
+			int level = entry >>> 19;
+
+			for (int d = 0; d < 6; d++) {
+				int nx = rx + DX[d];
+				int ny = y + DY[d];
+				int nz = rz + DZ[d];
+				if ( !inRegion(nx, ny, nz) )
+					continue;
+
+				int neighbourLevel = getLight(channel, nx, ny, nz);
+				if ( neighbourLevel <= 0 )
+					continue;
+
+				boolean litByCell = neighbourLevel < level
+						|| (channel == SKY && d == DOWN && level == BlockData.MAX_LIGHT && neighbourLevel == BlockData.MAX_LIGHT);
+
+				if ( litByCell ) {
+					setLight(channel, nx, ny, nz, 0);
+					enqueueRemove(nx, ny, nz, neighbourLevel);
+
+					// Light sources keep their own light
+					if ( channel == BLOCK ) {
+						Chunk chunk = chunkAt(nx, nz);
+						int emission = BlockData.getLightEmission(chunk.getBlockId(nx & 15, ny, nz & 15));
+						if ( emission > 0 ) {
+							setLight(BLOCK, nx, ny, nz, emission);
+							enqueue(nx, ny, nz);
+						}
+					}
+				} else {
+					enqueue(nx, ny, nz);
+				}
+			}
+		}
+
+		removeHead = 0;
+		removeTail = 0;
+	}
+
+	/**
+	 * Queue the light along the inside edges of the four side neighbours, so it spreads into the center chunk.
+	 */
+	private void enqueueBorders( int channel ) {
+		for (int n = 0; n < Chunk.WIDTH; n++) {
+			enqueueColumn(channel, Chunk.WIDTH - 1, Chunk.DEPTH + n);
+			enqueueColumn(channel, Chunk.WIDTH * 2, Chunk.DEPTH + n);
+			enqueueColumn(channel, Chunk.WIDTH + n, Chunk.DEPTH - 1);
+			enqueueColumn(channel, Chunk.WIDTH + n, Chunk.DEPTH * 2);
+		}
+	}
+
+	private void enqueueColumn( int channel, int rx, int rz ) {
+		if ( chunkAt(rx, rz) == null )
+			return;
+
+		for (int y = 0; y < Chunk.HEIGHT; y++) {
+			if ( getLight(channel, rx, y, rz) > 1 )
+				enqueue(rx, y, rz);
+		}
+	}
+
+	/**
+	 * Find the top of every column of the center chunk and the columns around it.
+	 * Light stops spreading sideways above the top of a column, so it is the only part that is queued.
+	 */
+	private void findTops() {
+		for (int i = -1; i <= Chunk.WIDTH; i++) {
+			for (int k = -1; k <= Chunk.DEPTH; k++) {
+				int rx = Chunk.WIDTH + i;
+				int rz = Chunk.DEPTH + k;
+				Chunk chunk = chunkAt(rx, rz);
+
+				// Transparent blocks below the top are lit when sky light falls through them
+				tops[topIndex(i, k)] = chunk == null ? 0 : chunk.getHighestBlock(rx & 15, rz & 15) + 1;
+			}
+		}
+	}
+
+	/**
+	 * Set whole sections above the highest column of the chunk to full sky light without per block storage.
+	 * @return The lowest y that was filled.
+	 */
+	private int fillOpenSections( Chunk chunk ) {
+		int highest = 0;
+		for (int i = 0; i < Chunk.WIDTH; i++) {
+			for (int k = 0; k < Chunk.DEPTH; k++) {
+				highest = Math.max(highest, tops[topIndex(i, k)]);
+			}
+		}
+
+		int first = (highest + ChunkSection.SIZE - 1) / ChunkSection.SIZE;
+		for (int s = first; s < Chunk.SECTIONS; s++) {
+			chunk.fillSkyLight(s, BlockData.MAX_LIGHT);
+			changed[4] |= 1 << s;
+		}
+
+		// Faces of the section below look into the filled one
+		if ( first < Chunk.SECTIONS && first > 0 )
+			changed[4] |= 1 << (first - 1);
+
+		return first * ChunkSection.SIZE;
+	}
+
+	private int getLight( int channel, int rx, int y, int rz ) {
+		Chunk chunk = chunkAt(rx, rz);
+		if ( chunk == null )
+			return 0;
+
+		return channel == SKY ? chunk.getSkyLight(rx & 15, y, rz & 15) : chunk.getBlockLight(rx & 15, y, rz & 15);
+	}
+
+	private void setLight( int channel, int rx, int y, int rz, int level ) {
+		Chunk chunk = chunkAt(rx, rz);
+		if ( channel == SKY )
+			chunk.setSkyLight(rx & 15, y, rz & 15, level);
+		else
+			chunk.setBlockLight(rx & 15, y, rz & 15, level);
+
+		// Faces in the cell's own section and the ones next to it read this light
+		int index = regionIndex(rx, rz);
+		int section = y >> 4;
+		int mask = 1 << section;
+		if ( (y & 15) == 0 && section > 0 )
+			mask |= 1 << (section - 1);
+		if ( (y & 15) == 15 && section < Chunk.SECTIONS - 1 )
+			mask |= 1 << (section + 1);
+		changed[index] |= mask;
+
+		int lx = rx & 15;
+		int lz = rz & 15;
+		if ( lx == 0 && rx > 0 )
+			changed[index - 3] |= 1 << section;
+		if ( lx == 15 && rx < REGION_SIZE - 1 )
+			changed[index + 3] |= 1 << section;
+		if ( lz == 0 && rz > 0 )
+			changed[index - 1] |= 1 << section;
+		if ( lz == 15 && rz < REGION_SIZE - 1 )
+			changed[index + 1] |= 1 << section;
+	}
+
+	private void enqueue( int rx, int y, int rz ) {
+		if ( tail == queue.length ) {
+			// Reuse the consumed front of the queue before growing it
+			if ( head > queue.length / 2 ) {
+				System.arraycopy(queue, head, queue, 0, tail - head);
+				tail -= head;
+				head = 0;
+			} else {
+				queue = Arrays.copyOf(queue, queue.length * 2);
+			}
+		}
+
+		queue[tail++] = rx | rz << 6 | y << 12;
+	}
+
+	private void enqueueRemove( int rx, int y, int rz, int level ) {
+		if ( removeTail == removeQueue.length ) {
+			if ( removeHead > removeQueue.length / 2 ) {
+				System.arraycopy(removeQueue, removeHead, removeQueue, 0, removeTail - removeHead);
+				removeTail -= removeHead;
+				removeHead = 0;
+			} else {
+				removeQueue = Arrays.copyOf(removeQueue, removeQueue.length * 2);
+			}
+		}
+
+		removeQueue[removeTail++] = rx | rz << 6 | y << 12 | level << 19;
+	}
+
+	/**
+	 * Look up the chunks around a chunk.
+	 */
+	private void load( World world, int chunkX, int chunkZ ) {
+		for (int i = -1; i <= 1; i++) {
+			for (int k = -1; k <= 1; k++) {
+				region[(i + 1) * 3 + (k + 1)] = world.getChunk(chunkX + i, chunkZ + k);
+			}
+		}
+	}
+
+	/**
+	 * Flag changed sections for a mesh update and let go of the region.
+	 */
+	private void flush() {
+		for (int i = 0; i < region.length; i++) {
+			if ( region[i] != null && changed[i] != 0 )
+				region[i].markSectionsDirty(changed[i]);
+
+			region[i] = null;
+			changed[i] = 0;
+		}
+	}
+
+	private Chunk chunkAt( int rx, int rz ) {
+		return region[regionIndex(rx, rz)];
+	}
+
+	private static int regionIndex( int rx, int rz ) {
+		return (rx >> 4) * 3 + (rz >> 4);
+	}
+
+	private static boolean inRegion( int rx, int y, int rz ) {
+		return rx >= 0 && rx < REGION_SIZE && rz >= 0 && rz < REGION_SIZE && y >= 0 && y < Chunk.HEIGHT;
+	}
+
+	private static int topIndex( int i, int k ) {
+		return (i + 1) * (Chunk.DEPTH + 2) + (k + 1);
+	}
+}
@@ -0,0 +1,70 @@
+package blockgame.game.world;
+
+import java.util.Arrays;
+
+/**
+ * 4 bit values for every block of a {@link ChunkSection}, used for light. Like a section it starts out
+ * uniform, and only allocates two values per byte once a value differs.
+ */
+public class NibbleArray {
+	public static final int BYTES = ChunkSection.VOLUME / 2;
+
+	/** Value of every entry while uniform */
+	private byte uniform;
+
+	/** Packed values, low nibble first. Null while uniform */
+	private byte[] data;
+
+	public NibbleArray(int value) {
+		this.uniform = (byte) value;
+	}
+
+	/**
+	 * Returns the value at a section-local position. Coordinates are not bounds checked.
+	 */
+	public int get( int x, int y, int z ) {
+		byte[] data = this.data;
+		if ( data == null )
+			return uniform;
+
+		int index = x << 8 | z << 4 | y;
+		return (data[index >> 1] >> ((index & 1) << 2)) & 15;
+	}
+
+	/**
+	 * Sets the value at a section-local position. Coordinates are not bounds checked.
+	 * @param value 0 to 15
+	 */
+	public void set( int x, int y, int z, int value ) {
+		byte[] data = this.data;
+		if ( data == null ) {
+			if ( value == uniform )
+				return;
+
+			// Leave uniform mode
+			data = new byte[BYTES];
+			Arrays.fill(data, (byte) (uniform | uniform << 4));
+			this.data = data;
+		}
+
+		int index = x << 8 | z << 4 | y;
+		int shift = (index & 1) << 2;
+		int i = index >> 1;
+		data[i] = (byte) ((data[i] & ~(15 << shift)) | (value << shift));
+	}
+
+	/**
+	 * Sets every entry to the same value and releases the packed storage.
+	 */
+	public void fill( int value ) {
+		this.uniform = (byte) value;
+		this.data = null;
+	}
+
+	/**
+	 * @return Approximate heap memory used by this array in bytes.
+	 */
+	public int getMemoryUsage() {
+		return data == null ? 16 : 32 + BYTES;
+	}
+}
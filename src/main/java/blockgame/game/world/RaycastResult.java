@@ -0,0 +1,121 @@
+package blockgame.game.world;
+
+import blockgame.game.BlockData;
+
+/**
+ * The block a ray hit, filled in by {@link World#raycast(float, float, float, float, float, float, float, RaycastResult)}.
+ * A result can be reused for any number of casts.
+ */
+public class RaycastResult {
+	/** Faces, in the same order as the chunk mesher's faces */
+	public static final int FACE_NONE = -1;
+	public static final int FACE_BOTTOM = 0;
+	public static final int FACE_TOP = 1;
+	public static final int FACE_LEFT = 2;
+	public static final int FACE_RIGHT = 3;
+	public static final int FACE_FRONT = 4;
+	public static final int FACE_BACK = 5;
+
+	/** Direction each face points in */
+	private static final int[][] FACE_NORMAL = { {0,-1,0}, {0,1,0}, {-1,0,0}, {1,0,0}, {0,0,1}, {0,0,-1} };
+
+	private boolean hit;
+	private int x;
+	private int y;
+	private int z;
+	private int face;
+	private float distance;
+	private byte blockId;
+
+	protected void set( int x, int y, int z, int face, float distance, byte blockId ) {
+		this.hit = true;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.face = face;
+		this.distance = distance;
+		this.blockId = blockId;
+	}
+
+	protected void reset() {
+		this.hit = false;
+		this.face = FACE_NONE;
+		this.distance = 0;
+		this.blockId = BlockData.AIR.getId();
+	}
+
+	/**
+	 * @return True if the ray hit a block.
+	 */
+	public boolean isHit() {
+		return this.hit;
+	}
+
+	/**
+	 * @return X position of the block that was hit. This is in block-space.
+	 */
+	public int getX() {
+		return this.x;
+	}
+
+	/**
+	 * @return Y position of the block that was hit. This is in block-space.
+	 */
+	public int getY() {
+		return this.y;
+	}
+
+	/**
+	 * @return Z position of the block that was hit. This is in block-space.
+	 */
+	public int getZ() {
+		return this.z;
+	}
+
+	/**
+	 * @return The FACE_* constant of the face the ray entered through. FACE_NONE if the ray started inside the block.
+	 */
+	public int getFace() {
+		return this.face;
+	}
+
+	/**
+	 * @return X position of the block in front of the hit face, where a new block would be placed.
+	 */
+	public int getAdjacentX() {
+		return face == FACE_NONE ? x : x + FACE_NORMAL[face][0];
+	}
+
+	/**
+	 * @return Y position of the block in front of the hit face, where a new block would be placed.
+	 */
+	public int getAdjacentY() {
+		return face == FACE_NONE ? y : y + FACE_NORMAL[face][1];
+	}
+
+	/**
+	 * @return Z position of the block in front of the hit face, where a new block would be placed.
+	 */
+	public int getAdjacentZ() {
+		return face == FACE_NONE ? z : z + FACE_NORMAL[face][2];
+	}
+
+	/**
+	 * @return Distance along the ray to the point where it entered the block.
+	 */
+	public float getDistance() {
+		return this.distance;
+	}
+
+	/**
+	 * @return Id of the block that was hit.
+	 */
+	public byte getBlockId() {
+		return this.blockId;
+	}
+
+	@Override
+	public String toString() {
+		return hit ? "RaycastResult(" + x + ", " + y + ", " + z + ", face " + face + ", " + distance + ")" : "RaycastResult(miss)";
+	}
+}
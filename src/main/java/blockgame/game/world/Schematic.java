@@ -0,0 +1,59 @@
+package blockgame.game.world;
+
+import java.util.Arrays;
+
+import blockgame.game.BlockData;
+
+/**
+ * A box of blocks that can be placed into a world as one edit, see {@link BlockEditBatch#place(Schematic, int, int, int)}.
+ * Air in a schematic is left out when placing, so the blocks already in the world show through.
+ */
+public class Schematic {
+	private final int sizeX;
+	private final int sizeY;
+	private final int sizeZ;
+	private final byte[] blocks;
+
+	/**
+	 * Create a schematic filled with air.
+	 */
+	public Schematic( int sizeX, int sizeY, int sizeZ ) {
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.blocks = new byte[sizeX * sizeY * sizeZ];
+		Arrays.fill(blocks, BlockData.AIR.getId());
+	}
+
+	/**
+	 * Set a block inside the schematic.
+	 * @return This schematic, so calls can be chained.
+	 */
+	public Schematic setBlock( BlockData block, int x, int y, int z ) {
+		blocks[index(x, y, z)] = block.getId();
+		return this;
+	}
+
+	public byte getBlockId( int x, int y, int z ) {
+		return blocks[index(x, y, z)];
+	}
+
+	public int getSizeX() {
+		return this.sizeX;
+	}
+
+	public int getSizeY() {
+		return this.sizeY;
+	}
+
+	public int getSizeZ() {
+		return this.sizeZ;
+	}
+
+	private int index( int x, int y, int z ) {
+		if ( x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ )
+			throw new IndexOutOfBoundsException("(" + x + ", " + y + ", " + z + ") is outside a " + sizeX + "x" + sizeY + "x" + sizeZ + " schematic");
+
+		return (x * sizeZ + z) * sizeY + y;
+	}
+}
@@ -1,97 +1,350 @@
 package blockgame.game.world;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 
+import org.joml.Vector3f;
+
 import blockgame.game.BlockData;
-import blockgame.game.Location;
+import blockgame.game.world.storage.RegionStorage;
 
 public class World {
 	protected List<Chunk> chunks = new ArrayList<Chunk>();
-	private HashMap<ChunkHashKey, Chunk> chunkMap = new HashMap<ChunkHashKey, Chunk>();
+	private final ChunkMap chunkMap = new ChunkMap();
+
+	private final WorldConfig config;
+	
+	private final WorldGeneration generation;
+	
+	/** Engines are not thread-safe, so every thread lighting chunks has its own */
+	private final ThreadLocal<LightEngine> lightEngines = ThreadLocal.withInitial(LightEngine::new);
+	
+	/** Center chunks of the regions being lit, as x,z pairs. See {@link #claimLightRegion(int, int)} */
+	private int[] lightClaims = new int[16];
+	private int lightClaimCount;
+	private final Object lightClaimLock = new Object();
 
-	public final static int SEED = (int) (Math.random() * 1e5);
+	private final RegionStorage storage;
+	
+	private final ChunkManager chunkManager;
 	
-	public final static int SEA_LEVEL = (int) 64;
+	/** Chunk offset of each side, indexed by Chunk.SIDE_* */
+	private static final int[] SIDE_X = { -1, 1, 0, 0 };
+	private static final int[] SIDE_Z = { 0, 0, -1, 1 };
 
+	/**
+	 * Create a world with a random seed that is not persisted.
+	 */
 	public World() {
-		
-		// Generate world
-		for (int i = 0; i < chunks.size(); i++) {
-			Chunk chunk = chunks.get(i);
-			WorldGeneration.generate(chunk);
-		}
+		this(new WorldConfig(), null);
+	}
+	
+	/**
+	 * Create a world that loads and saves chunks through region files.
+	 * @param config Seed and generation settings
+	 * @param storage Chunk storage, or null to always generate.
+	 */
+	public World(WorldConfig config, RegionStorage storage) {
+		this.config = config;
+		this.generation = new WorldGeneration(config);
+		this.storage = storage;
 
-		createChunkManager();
+		chunkManager = createChunkManager();
 	}
 	
 	protected ChunkManager createChunkManager() {
-		return new ChunkManager();
+		return new ChunkManager(this);
 	}
 
 	public void loadChunk(Chunk chunk) {
 		loadChunk( chunk, false );
 	}
 	
-	public synchronized void loadChunk( Chunk chunk, boolean generate ) {
+	public void loadChunk( Chunk chunk, boolean generate ) {
+		if ( getChunk(chunk.getX(), chunk.getZ()) != null )
+			return;
+		
+		if ( generate ) {
+			prepareChunk(chunk);
+		}
+		
+		publishChunk(chunk);
+	}
+	
+	/**
+	 * Fill a chunk that is not part of the world yet, either from storage or by generating it.
+	 * Does not take the world lock, so several chunks can be prepared at once.
+	 * @param chunk
+	 */
+	public void prepareChunk( Chunk chunk ) {
+		if ( readChunk(chunk) ) {
+			chunk.setStatus(ChunkStatus.DECORATED);
+		} else {
+			generation.generate(chunk);
+		}
+	}
+	
+	/**
+	 * Insert a filled chunk into the world and mark the sections of its neighbours that face it for a mesh update.
+	 * Chunks that now have all eight neighbours are then lit on the calling thread, after the world lock is released,
+	 * and move to {@link ChunkStatus#LIGHTED}.
+	 * @param chunk
+	 * @return False if a chunk already exists at the same position.
+	 */
+	public boolean publishChunk( Chunk chunk ) {
+		Chunk[] lightable = new Chunk[9];
+		int count = insertChunk(chunk, lightable);
+		if ( count == -1 )
+			return false;
+		
+		for (int i = 0; i < count; i++) {
+			lightChunk(lightable[i]);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * The part of {@link #publishChunk(Chunk)} done under the world lock.
+	 * @param chunk
+	 * @param lightable Filled with the chunks that are ready to be lit
+	 * @return The amount of chunks ready to be lit, or -1 if a chunk already exists at the same position.
+	 */
+	private synchronized int insertChunk( Chunk chunk, Chunk[] lightable ) {
+		int count = 0;
 		synchronized( chunks ) {
-			if ( chunks.contains(chunk) )
-				return;
+			int x = chunk.getX();
+			int z = chunk.getZ();
+			if ( this.getChunk(x, z) != null )
+				return -1;
 			
-			Location loc = chunk.getLocation();
 			chunks.add(chunk);
-			chunkMap.put(new ChunkHashKey(loc.getBlockX(), loc.getBlockZ()), chunk);
-			chunk.updated = true;
+			chunkMap.put(chunk);
+			chunk.markDirty();
 			
-			if ( generate ) {
-				WorldGeneration.generate(chunk);
-			}
+			// Neighbours saw air where this chunk is, remesh the sections facing its edge blocks
+			propagateBorderChanges(chunk);
 			
-			// Mark neighboring chunks as needing to be updated
+			// This chunk or its neighbours may now have all their neighbours. Their blocks are final, so light them.
 			for (int i = -1; i <=1; i++) {
 				for (int j = -1; j <=1; j++) {
-					if ( i == 0 && j == 0 )
-						continue;
-					
-					Chunk c = this.getChunk(loc.getBlockX()+i, loc.getBlockZ()+j);
-					if ( c != null )
-						c.updated = true;
+					Chunk c = this.getChunk(x+i, z+j);
+					if ( c != null && c.getStatus() == ChunkStatus.DECORATED && hasAllNeighbours(c) )
+						lightable[count++] = c;
 				}
 			}
 		}
+		
+		return count;
 	}
 
-	static class ChunkHashKey {
-		private int x;
-		private int y;
-
-		ChunkHashKey( int x, int y ) {
-			this.x = x;
-			this.y = y;
+	/**
+	 * Remove a chunk from the world, saving it first if it was modified.
+	 * @param chunk
+	 * @return False if the chunk is not part of this world.
+	 */
+	public boolean unloadChunk( Chunk chunk ) {
+		synchronized( this ) {
+			synchronized( chunks ) {
+				if ( this.getChunk(chunk.getX(), chunk.getZ()) != chunk )
+					return false;
+				
+				chunkMap.remove(chunk.getX(), chunk.getZ());
+				chunks.remove(chunk);
+				chunk.setStatus(ChunkStatus.UNLOADING);
+			}
 		}
-
-		@Override
-		public int hashCode() { 
-			return 40000 * x + y;
+		
+		saveChunk(chunk);
+		chunk.dispose();
+		return true;
+	}
+	
+	/**
+	 * Flag the sections of neighbouring chunks that face edge blocks which changed in a chunk.
+	 * Sections that are empty on the neighbour's side have no faces there, so they are left alone.
+	 * @param chunk
+	 */
+	private void propagateBorderChanges( Chunk chunk ) {
+		int changes = chunk.takeBorderChanges();
+		if ( changes == 0 )
+			return;
+		
+		for (int side = 0; side < SIDE_X.length; side++) {
+			int mask = (changes >>> (side * Chunk.SECTIONS)) & Chunk.ALL_SECTIONS;
+			if ( mask == 0 )
+				continue;
+			
+			Chunk neighbour = this.getChunk(chunk.getX() + SIDE_X[side], chunk.getZ() + SIDE_Z[side]);
+			if ( neighbour != null )
+				neighbour.markSectionsDirty(mask & neighbour.getNonEmptySections());
 		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (this == obj)
-				return true;
-			if (obj == null)
-				return false;
-			if (getClass() != obj.getClass())
-				return false;
-			ChunkHashKey other = (ChunkHashKey) obj;
-			if (x != other.x)
-				return false;
-			if (y != other.y)
-				return false;
+	}
+	
+	/**
+	 * @return True if all eight neighbours of a chunk are in the world.
+	 */
+	private boolean hasAllNeighbours( Chunk chunk ) {
+		for (int i = -1; i <=1; i++) {
+			for (int j = -1; j <=1; j++) {
+				if ( i == 0 && j == 0 )
+					continue;
+				
+				if ( this.getChunk(chunk.getX()+i, chunk.getZ()+j) == null )
+					return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Light a chunk that has all of its neighbours. Several threads can light chunks at once, as long as
+	 * their regions do not overlap. Another thread may have lit the chunk already, then nothing is done.
+	 * @param chunk
+	 */
+	private void lightChunk( Chunk chunk ) {
+		if ( !claimLightRegion(chunk.getX(), chunk.getZ()) )
+			return;
+		
+		try {
+			if ( chunk.getStatus() == ChunkStatus.DECORATED && hasAllNeighbours(chunk) ) {
+				lightEngines.get().lightChunk(this, chunk);
+				chunk.compareAndSetStatus(ChunkStatus.DECORATED, ChunkStatus.LIGHTED);
+			}
+		} finally {
+			releaseLightRegion(chunk.getX(), chunk.getZ());
+		}
+	}
+	
+	/**
+	 * Wait until no other thread is lighting a chunk in the 3x3 region around a chunk, then reserve it.
+	 * Light only spreads inside that region, so lighting never waits on the world lock.
+	 * Must be released with {@link #releaseLightRegion(int, int)}.
+	 * @return False if the thread was interrupted while waiting. Nothing is claimed then.
+	 */
+	private boolean claimLightRegion( int x, int z ) {
+		synchronized( lightClaimLock ) {
+			while( isLightRegionClaimed(x, z) ) {
+				try {
+					lightClaimLock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			
+			if ( lightClaimCount * 2 == lightClaims.length )
+				lightClaims = Arrays.copyOf(lightClaims, lightClaims.length * 2);
+			
+			lightClaims[lightClaimCount * 2] = x;
+			lightClaims[lightClaimCount * 2 + 1] = z;
+			lightClaimCount++;
 			return true;
 		}
 	}
+	
+	private boolean isLightRegionClaimed( int x, int z ) {
+		// Two 3x3 regions overlap when their centers are at most two chunks apart
+		for (int i = 0; i < lightClaimCount; i++) {
+			if ( Math.abs(lightClaims[i * 2] - x) <= 2 && Math.abs(lightClaims[i * 2 + 1] - z) <= 2 )
+				return true;
+		}
+		
+		return false;
+	}
+	
+	private void releaseLightRegion( int x, int z ) {
+		synchronized( lightClaimLock ) {
+			// Claimed regions never overlap, so the center is only listed once
+			for (int i = 0; i < lightClaimCount; i++) {
+				if ( lightClaims[i * 2] == x && lightClaims[i * 2 + 1] == z ) {
+					lightClaimCount--;
+					lightClaims[i * 2] = lightClaims[lightClaimCount * 2];
+					lightClaims[i * 2 + 1] = lightClaims[lightClaimCount * 2 + 1];
+					break;
+				}
+			}
+			lightClaimLock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Fill a chunk from storage.
+	 * @return False if there is no storage or the chunk has never been saved.
+	 */
+	private boolean readChunk( Chunk chunk ) {
+		if ( storage == null )
+			return false;
+		
+		try {
+			return storage.loadChunk(chunk);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+	
+	/**
+	 * Write a chunk to storage if it changed since it was last saved.
+	 * @param chunk
+	 */
+	public void saveChunk( Chunk chunk ) {
+		if ( storage == null || !chunk.isDirty() )
+			return;
+		
+		try {
+			storage.saveChunk(chunk);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Save every modified chunk and flush storage to disk.
+	 */
+	public void save() {
+		if ( storage == null )
+			return;
+		
+		synchronized( chunks ) {
+			for (int i = 0; i < chunks.size(); i++) {
+				saveChunk(chunks.get(i));
+			}
+		}
+		
+		storage.close();
+	}
+	
+	/**
+	 * @return Seed and generation settings of this world.
+	 */
+	public WorldConfig getConfig() {
+		return this.config;
+	}
+	
+	/**
+	 * @return The terrain generator of this world.
+	 */
+	public WorldGeneration getGeneration() {
+		return this.generation;
+	}
+	
+	/**
+	 * @return The chunk manager streaming chunks into this world. May be null.
+	 */
+	public ChunkManager getChunkManager() {
+		return this.chunkManager;
+	}
+	
+	/**
+	 * @return The chunk storage of this world, or null if chunks are not persisted.
+	 */
+	public RegionStorage getStorage() {
+		return this.storage;
+	}
 
 	/**
 	 * Get chunk at a world coordinate (block coordinate)
@@ -100,8 +353,17 @@ public class World {
 	 * @return
 	 */
 	public Chunk getChunkAt( float worldX, float worldZ ) {
-		Location tempLoc = new Location(this, worldX, 0, worldZ);
-		return getChunk( tempLoc.getChunkX(), tempLoc.getChunkZ() );
+		return getChunk( (int)Math.floor(worldX/(float)Chunk.WIDTH), (int)Math.floor(worldZ/(float)Chunk.DEPTH) );
+	}
+	
+	/**
+	 * Get chunk at a world coordinate (block coordinate)
+	 * @param worldX
+	 * @param worldZ
+	 * @return
+	 */
+	public Chunk getChunkAt( int worldX, int worldZ ) {
+		return getChunk( Math.floorDiv(worldX, Chunk.WIDTH), Math.floorDiv(worldZ, Chunk.DEPTH) );
 	}
 	
 	
@@ -112,9 +374,7 @@ public class World {
 	 * @return
 	 */
 	public Chunk getChunk( int x, int z ) {
-		ChunkHashKey key = new ChunkHashKey(x, z);
-
-		return chunkMap.get(key);
+		return chunkMap.get(x, z);
 	}
 	
 	public void setBlock(BlockData block, int x, int y, int z) {
@@ -122,12 +382,170 @@ public class World {
 		if ( c == null )
 			return;
 		
-		Location chunkLoc = c.getWorldLocation();
-		int localX = (int) (x - chunkLoc.getX());
-		int localY = (int) (y - chunkLoc.getY());
-		int localZ = (int) (z - chunkLoc.getZ());
+		int localX = x - c.getX() * Chunk.WIDTH;
+		int localZ = z - c.getZ() * Chunk.DEPTH;
+		
+		c.setBlock(block, localX, y, localZ);
+		propagateBorderChanges(c);
+		
+		// Chunks that are not lit yet get their light when they are. Checked after the claim, so a chunk
+		// being lit right now either sees the new block or is lit by the time this runs.
+		if ( !claimLightRegion(c.getX(), c.getZ()) )
+			return;
 		
-		c.setBlock(block, localX, localY, localZ);
+		try {
+			if ( c.getStatus().isAtLeast(ChunkStatus.LIGHTED) )
+				lightEngines.get().updateBlock(this, x, y, z);
+		} finally {
+			releaseLightRegion(c.getX(), c.getZ());
+		}
+	}
+
+	/**
+	 * Write every block in a batch. Each chunk is looked up once, and its sections, neighbours and light are
+	 * updated once for all of its writes. Writes to chunks that are not loaded are dropped, like {@link #setBlock(BlockData, int, int, int)}.
+	 * @param batch
+	 */
+	public void apply( BlockEditBatch batch ) {
+		List<BlockEditBatch.Writes> edits = batch.getChunks();
+		for (int i = 0; i < edits.size(); i++) {
+			BlockEditBatch.Writes writes = edits.get(i);
+			Chunk c = getChunk(writes.chunkX, writes.chunkZ);
+			if ( c == null )
+				continue;
+			
+			c.setBlocks(writes.data, writes.size);
+			propagateBorderChanges(c);
+			
+			// Chunks that are not lit yet get their light when they are
+			if ( !claimLightRegion(c.getX(), c.getZ()) )
+				continue;
+			
+			try {
+				if ( c.getStatus().isAtLeast(ChunkStatus.LIGHTED) )
+					lightEngines.get().updateBlocks(this, c, writes.data, writes.size);
+			} finally {
+				releaseLightRegion(c.getX(), c.getZ());
+			}
+		}
+	}
+	
+	/**
+	 * Returns the highest block that is not air at a world coordinate (block coordinate).
+	 * @return The block y position, or -1 if the column is empty or not loaded.
+	 */
+	public int getHighestBlock( int x, int z ) {
+		Chunk c = getChunkAt( x, z );
+		if ( c == null )
+			return -1;
+		
+		return c.getHighestBlock(x - c.getX() * Chunk.WIDTH, z - c.getZ() * Chunk.DEPTH);
+	}
+
+	/**
+	 * Walk a ray through the block grid and find the first block that is not air. Steps exactly one block
+	 * boundary at a time (Amanatides & Woo), so no block along the ray is skipped. Does not allocate.
+	 * The ray stops at chunks that are not loaded.
+	 * @param originX Start of the ray. This is in block-space.
+	 * @param originY
+	 * @param originZ
+	 * @param directionX Direction of the ray. Does not need to be normalized.
+	 * @param directionY
+	 * @param directionZ
+	 * @param maxDistance Length of the ray in blocks
+	 * @param result Filled in with the block that was hit
+	 * @return True if a block was hit.
+	 */
+	public boolean raycast( float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float maxDistance, RaycastResult result ) {
+		result.reset();
+		
+		float length = (float) Math.sqrt(directionX*directionX + directionY*directionY + directionZ*directionZ);
+		if ( length == 0 )
+			return false;
+		
+		float dx = directionX / length;
+		float dy = directionY / length;
+		float dz = directionZ / length;
+		
+		// Block the ray starts in
+		int x = (int) Math.floor(originX);
+		int y = (int) Math.floor(originY);
+		int z = (int) Math.floor(originZ);
+		
+		int stepX = dx > 0 ? 1 : -1;
+		int stepY = dy > 0 ? 1 : -1;
+		int stepZ = dz > 0 ? 1 : -1;
+		
+		// Distance along the ray between two boundaries of each axis, and to the next boundary
+		float deltaX = dx == 0 ? Float.POSITIVE_INFINITY : Math.abs(1 / dx);
+		float deltaY = dy == 0 ? Float.POSITIVE_INFINITY : Math.abs(1 / dy);
+		float deltaZ = dz == 0 ? Float.POSITIVE_INFINITY : Math.abs(1 / dz);
+		float nextX = dx == 0 ? Float.POSITIVE_INFINITY : (dx > 0 ? x + 1 - originX : originX - x) * deltaX;
+		float nextY = dy == 0 ? Float.POSITIVE_INFINITY : (dy > 0 ? y + 1 - originY : originY - y) * deltaY;
+		float nextZ = dz == 0 ? Float.POSITIVE_INFINITY : (dz > 0 ? z + 1 - originZ : originZ - z) * deltaZ;
+		
+		// Faces entered when stepping along each axis
+		int faceX = stepX > 0 ? RaycastResult.FACE_LEFT : RaycastResult.FACE_RIGHT;
+		int faceY = stepY > 0 ? RaycastResult.FACE_BOTTOM : RaycastResult.FACE_TOP;
+		int faceZ = stepZ > 0 ? RaycastResult.FACE_BACK : RaycastResult.FACE_FRONT;
+		
+		Chunk chunk = null;
+		int chunkX = 0;
+		int chunkZ = 0;
+		int face = RaycastResult.FACE_NONE;
+		float distance = 0;
+		byte air = BlockData.AIR.getId();
+		
+		while ( distance <= maxDistance ) {
+			if ( y >= 0 && y < Chunk.HEIGHT ) {
+				// Only look up the chunk when the ray crosses into another one
+				int cx = Math.floorDiv(x, Chunk.WIDTH);
+				int cz = Math.floorDiv(z, Chunk.DEPTH);
+				if ( chunk == null || cx != chunkX || cz != chunkZ ) {
+					chunk = getChunk(cx, cz);
+					chunkX = cx;
+					chunkZ = cz;
+					if ( chunk == null )
+						return false;
+				}
+				
+				byte blockId = chunk.getBlockId(x - chunkX * Chunk.WIDTH, y, z - chunkZ * Chunk.DEPTH);
+				if ( blockId != air ) {
+					result.set(x, y, z, face, distance, blockId);
+					return true;
+				}
+			} else if ( (y < 0 && stepY < 0) || (y >= Chunk.HEIGHT && stepY > 0) ) {
+				// Moving away from the world
+				return false;
+			}
+			
+			// Step to the closest boundary
+			if ( nextX < nextY && nextX < nextZ ) {
+				x += stepX;
+				distance = nextX;
+				nextX += deltaX;
+				face = faceX;
+			} else if ( nextY < nextZ ) {
+				y += stepY;
+				distance = nextY;
+				nextY += deltaY;
+				face = faceY;
+			} else {
+				z += stepZ;
+				distance = nextZ;
+				nextZ += deltaZ;
+				face = faceZ;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Find the first block that is not air along a ray. See {@link #raycast(float, float, float, float, float, float, float, RaycastResult)}.
+	 */
+	public boolean raycast( Vector3f origin, Vector3f direction, float maxDistance, RaycastResult result ) {
+		return raycast(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, maxDistance, result);
 	}
 
 	public Block getBlock( int x, int y, int z ) {
@@ -139,12 +557,10 @@ public class World {
 		if ( c == null )
 			return (byte) BlockData.AIR.getId();
 
-		Location chunkLoc = c.getWorldLocation();
-		int localX = (int) (x - chunkLoc.getX());
-		int localY = (int) (y - chunkLoc.getY());
-		int localZ = (int) (z - chunkLoc.getZ());
+		int localX = x - c.getX() * Chunk.WIDTH;
+		int localZ = z - c.getZ() * Chunk.DEPTH;
 
-		return c.getBlockId(localX, localY, localZ);
+		return c.getBlockId(localX, y, localZ);
 	}
 
 	public List<Chunk> getLoadedChunks() {
@@ -0,0 +1,125 @@
+package blockgame.game.world;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Everything world generation depends on. Two worlds with equal configs generate the same blocks
+ * for the same chunk coordinates.
+ */
+public class WorldConfig {
+	/** Name of the file a config is stored in, inside a world directory */
+	public static final String FILE_NAME = "world.properties";
+
+	private final long seed;
+
+	private int seaLevel = 64;
+
+	/**
+	 * Horizontal spacing in blocks of cave noise samples. Must divide 16. 1 samples every block.
+	 * Interpolation flattens the noise peaks caves are carved from, so wider spacings carve less
+	 * (see CaveLatticeCheck in the benchmarks).
+	 */
+	private int caveSpacingXZ = 2;
+
+	/** Vertical spacing in blocks of cave noise samples. Must divide 16. 1 samples every block. */
+	private int caveSpacingY = 2;
+
+	/**
+	 * Create a config with a random seed.
+	 */
+	public WorldConfig() {
+		this(new Random().nextInt(100000));
+	}
+
+	public WorldConfig(long seed) {
+		this.seed = seed;
+	}
+
+	public long getSeed() {
+		return this.seed;
+	}
+
+	public int getSeaLevel() {
+		return this.seaLevel;
+	}
+
+	public WorldConfig setSeaLevel(int seaLevel) {
+		this.seaLevel = seaLevel;
+		return this;
+	}
+
+	public int getCaveSpacingXZ() {
+		return this.caveSpacingXZ;
+	}
+
+	public int getCaveSpacingY() {
+		return this.caveSpacingY;
+	}
+
+	/**
+	 * Set the spacing of the cave noise lattice. Both values must divide 16.
+	 * @param horizontal
+	 * @param vertical
+	 */
+	public WorldConfig setCaveSpacing(int horizontal, int vertical) {
+		if ( horizontal <= 0 || vertical <= 0 || 16 % horizontal != 0 || 16 % vertical != 0 )
+			throw new IllegalArgumentException("Cave spacing must divide 16: " + horizontal + ", " + vertical);
+
+		this.caveSpacingXZ = horizontal;
+		this.caveSpacingY = vertical;
+		return this;
+	}
+
+	/**
+	 * Write this config into a world directory.
+	 * @param directory
+	 * @throws IOException
+	 */
+	public void save(File directory) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("seed", String.valueOf(seed));
+		properties.setProperty("seaLevel", String.valueOf(seaLevel));
+		properties.setProperty("caveSpacingXZ", String.valueOf(caveSpacingXZ));
+		properties.setProperty("caveSpacingY", String.valueOf(caveSpacingY));
+
+		directory.mkdirs();
+		try (OutputStream out = new FileOutputStream(new File(directory, FILE_NAME))) {
+			properties.store(out, "World configuration");
+		}
+	}
+
+	/**
+	 * Read the config of a world directory. If the directory has none, a config with a random seed
+	 * is created and saved there, so the world keeps generating the same way when reopened.
+	 * @param directory
+	 * @throws IOException
+	 */
+	public static WorldConfig load(File directory) throws IOException {
+		File file = new File(directory, FILE_NAME);
+		if ( !file.exists() ) {
+			WorldConfig config = new WorldConfig();
+			config.save(directory);
+			return config;
+		}
+
+		Properties properties = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			properties.load(in);
+		}
+
+		WorldConfig config = new WorldConfig(Long.parseLong(properties.getProperty("seed")));
+		config.setSeaLevel(Integer.parseInt(properties.getProperty("seaLevel", String.valueOf(config.seaLevel))));
+		config.setCaveSpacing(
+				Integer.parseInt(properties.getProperty("caveSpacingXZ", String.valueOf(config.caveSpacingXZ))),
+				Integer.parseInt(properties.getProperty("caveSpacingY", String.valueOf(config.caveSpacingY)))
+		);
+		return config;
+	}
+}
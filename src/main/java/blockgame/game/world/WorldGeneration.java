@@ -3,23 +3,61 @@ package blockgame.game.world;
 import blockgame.etc.OpenSimplexNoise;
 import blockgame.game.BlockData;
 
+/**
+ * Generates terrain from a {@link WorldConfig}. The blocks of a chunk only depend on the config
+ * and the chunk's coordinates.
+ */
 public class WorldGeneration {
 
-	protected static OpenSimplexNoise terrainNoise = new OpenSimplexNoise(World.SEED);
-	protected static OpenSimplexNoise mountainNoise = new OpenSimplexNoise(World.SEED*4);
-	protected static OpenSimplexNoise moistureNoise = new OpenSimplexNoise(World.SEED*2);
-	protected static OpenSimplexNoise treeNoise = new OpenSimplexNoise(World.SEED*3);
+	protected final WorldConfig config;
+	protected final int seaLevel;
+	
+	protected final OpenSimplexNoise terrainNoise;
+	protected final OpenSimplexNoise mountainNoise;
+	protected final OpenSimplexNoise moistureNoise;
+	protected final OpenSimplexNoise treeNoise;
+	
+	/** Height field reused by each generator thread */
+	private static final ThreadLocal<HeightField> heightField = ThreadLocal.withInitial(HeightField::new);
+	
+	/** Cave noise lattice, reused by each generator thread */
+	private static final ThreadLocal<double[]> caveLattice = new ThreadLocal<double[]>();
+
+	public WorldGeneration(WorldConfig config) {
+		this.config = config;
+		this.seaLevel = config.getSeaLevel();
+		
+		long seed = config.getSeed();
+		this.terrainNoise = new OpenSimplexNoise(seed);
+		this.mountainNoise = new OpenSimplexNoise(seed*4);
+		this.moistureNoise = new OpenSimplexNoise(seed*2);
+		this.treeNoise = new OpenSimplexNoise(seed*3);
+	}
+	
+	/**
+	 * @return The config this generator was created with.
+	 */
+	public WorldConfig getConfig() {
+		return this.config;
+	}
 
-	public static void generate(Chunk chunk) {
+	public void generate(Chunk chunk) {
+		HeightField field = heightField.get();
+		field.compute(chunk, this);
+		
+		generateTerrain(chunk, field);
+		chunk.setStatus(ChunkStatus.TERRAIN);
 		
-		generateTerrain(chunk);
 		generateCaves(chunk);
-		generateTrees(chunk);
+		chunk.setStatus(ChunkStatus.CAVES);
+		
+		generateTrees(chunk, field);
 		bedrock(chunk);
-		generateWater(chunk);
+		generateWater(chunk, field);
+		chunk.setStatus(ChunkStatus.DECORATED);
 	}
 	
-	private static void bedrock(Chunk chunk) {
+	private void bedrock(Chunk chunk) {
 		for(int i=0;i<Chunk.WIDTH;i++){
 			for(int j=0;j<Chunk.DEPTH;j++){
 				chunk.setBlock(BlockData.BEDROCK, i, 0, j);
@@ -32,27 +70,20 @@ public class WorldGeneration {
 	 * @param worldX
 	 * @param worldY
 	 */
-	private static double getMoisture( int worldX, int worldY ) {
+	double getMoisture( int worldX, int worldY ) {
 		double SCALE = 512;
 		double xx = worldX / SCALE;
 		double yy = worldY / SCALE;
 		return (moistureNoise.eval(xx, yy)+terrainNoise.eval(xx*64, yy*64)*0.1) * 0.5 + 0.5;
 	}
 	
-	private static double slope(int x, int y) {
-		double h1 = naturalHeight(x-1, y);
-		double h2 = naturalHeight(x+1, y);
-		double h3 = naturalHeight(x, y-1);
-		double h4 = naturalHeight(x, y+1);
-		double h5 = naturalHeight(x, y);
-
-		double average = (h1+h2+h3+h4)/4d;
-		double min = Math.min(Math.min(h1, h2), Math.min(h3, Math.min(h4, h5)));
-		double max = Math.max(Math.max(h1, h2), Math.max(h3, Math.max(h4, h5)));
-		return (max-average)/(min-average);
-	}
-	
-	private static double naturalHeight(int x, int y) {
+	/**
+	 * Returns the ground height of a column before caves and water.
+	 * @param x
+	 * @param y
+	 * @param M Moisture of the column, see {@link #getMoisture(int, int)}
+	 */
+	double naturalHeight(int x, int y, double M) {
 		final double SCALE = 48;
 		final double xx = x / SCALE;
 		final double yy = y / SCALE;
@@ -69,9 +100,6 @@ public class WorldGeneration {
 		flatNess = Math.pow(flatNess+0.25, mountainNoise.eval(xx / 2d, yy / 2d) + 4);
 		e *= flatNess;
 		
-		// Get moisture
-		double M = getMoisture( x, y );
-		
 		// The less moist it is, the more flat
 		e *= Math.pow(M, 2);
 		
@@ -82,7 +110,7 @@ public class WorldGeneration {
 		e += Math.pow(terrainNoise.eval((1/8f) * -xx, (1/8f) * -yy),3)*24;
 		
 		// Current ground level
-		double H = World.SEA_LEVEL + (int)Math.ceil(e);
+		double H = seaLevel + (int)Math.ceil(e);
 		return H;
 	}
 	
@@ -90,15 +118,12 @@ public class WorldGeneration {
 	 * Adds the final water level
 	 * @param chunk
 	 */
-	private static void generateWater(Chunk chunk) {
-		int x = chunk.getWorldLocation().getBlockX();
-		int y = chunk.getWorldLocation().getBlockZ();
-
+	private void generateWater(Chunk chunk, HeightField field) {
 		for(int i=0;i<Chunk.WIDTH;i++){
 			for(int j=0;j<Chunk.DEPTH;j++){
-				int H = (int) naturalHeight(i+x, j+y);
+				int H = (int) field.getHeight(i, j);
 
-				for (int k = H-1; k <= World.SEA_LEVEL; k++) {
+				for (int k = H-1; k <= seaLevel; k++) {
 					if ( chunk.getBlock(i, k, j).getData() != BlockData.AIR )
 						continue;
 					
@@ -112,19 +137,13 @@ public class WorldGeneration {
 	 * Generates main terrain
 	 * @param chunk
 	 */
-	private static void generateTerrain(Chunk chunk) {
-		int x = chunk.getWorldLocation().getBlockX();
-		int y = chunk.getWorldLocation().getBlockZ();
-
+	private void generateTerrain(Chunk chunk, HeightField field) {
 		for(int i=0;i<Chunk.WIDTH;i++){
 			for(int j=0;j<Chunk.DEPTH;j++){
-				int worldX = i+x;
-				int worldZ = j+y;
-				
-				double H = naturalHeight(worldX, worldZ);
-				double M = getMoisture(worldX, worldZ);
-				double slope = slope(worldX, worldZ);
-				double seaOffset = H - World.SEA_LEVEL;
+				double H = field.getHeight(i, j);
+				double M = field.getMoisture(i, j);
+				double slope = field.getSlope(i, j);
+				double seaOffset = H - seaLevel;
 				
 				// Add ground
 				for (int a = 0; a <= H; a++) {
@@ -140,7 +159,7 @@ public class WorldGeneration {
 						if ( M > 0.3 ) {
 							chunk.setBlock(BlockData.DIRT, i, a, j);
 						} else {
-							if ( a < World.SEA_LEVEL + 12 ) {
+							if ( a < seaLevel + 12 ) {
 								chunk.setBlock(BlockData.SAND, i, a, j);
 							} else {
 								chunk.setBlock(BlockData.STONE, i, a, j);
@@ -150,7 +169,7 @@ public class WorldGeneration {
 				}
 				
 				// Grass
-				if ( chunk.getBlockId(i, (int)H, j) == BlockData.DIRT.getId() && H >= World.SEA_LEVEL ) {
+				if ( chunk.getBlockId(i, (int)H, j) == BlockData.DIRT.getId() && H >= seaLevel ) {
 					chunk.setBlock(BlockData.GRASS, i, (int)H, j);
 				}
 			}
@@ -158,26 +177,64 @@ public class WorldGeneration {
 	}
 	
 	/**
-	 * Generates caves within a chunk
+	 * Generates caves within a chunk. Cave noise is sampled on a lattice every
+	 * {@link WorldConfig#getCaveSpacingXZ()} by {@link WorldConfig#getCaveSpacingY()} blocks and trilinearly interpolated in between.
 	 * @param chunk
 	 */
-	private static void generateCaves(Chunk chunk) {
+	private void generateCaves(Chunk chunk) {
 		int x = chunk.getWorldLocation().getBlockX();
 		int y = chunk.getWorldLocation().getBlockZ();
 		double SCALE = 16;
-
-		for(int i=0;i<Chunk.WIDTH;i++) {
-			for(int j=0;j<Chunk.DEPTH;j++) {
-				for (int k=0; k<Chunk.HEIGHT; k++) {
-					double xx = (i + x) / SCALE;
-					double yy = (k + 0) / SCALE;
-					double zz = (j + y) / SCALE;
-					
-					double e = terrainNoise.eval(xx, yy, zz);
+		
+		// Caves only need to reach the highest section with blocks in it
+		int top = Chunk.SECTIONS;
+		while ( top > 0 && chunk.isSectionEmpty(top-1) )
+			top--;
+		if ( top == 0 )
+			return;
+		
+		// Sample the lattice. Indexed [i][k][j].
+		int sx = config.getCaveSpacingXZ();
+		int sy = config.getCaveSpacingY();
+		int sizeX = Chunk.WIDTH / sx + 1;
+		int sizeY = top * ChunkSection.SIZE / sy + 1;
+		int sizeZ = Chunk.DEPTH / sx + 1;
+		double[] lattice = terrainNoise.evalGrid(caveLattice.get(), x / SCALE, 0, y / SCALE, sx / SCALE, sy / SCALE, sx / SCALE, sizeX, sizeY, sizeZ);
+		caveLattice.set(lattice);
+		
+		for (int s = 0; s < top; s++) {
+			// Nothing to carve out of empty sections
+			if ( chunk.isSectionEmpty(s) )
+				continue;
+			
+			for(int i=0;i<Chunk.WIDTH;i++) {
+				int ci = i / sx;
+				double fi = (i % sx) / (double)sx;
+				
+				for (int k=s*ChunkSection.SIZE; k<(s+1)*ChunkSection.SIZE; k++) {
+					int ck = k / sy;
+					double fk = (k % sy) / (double)sy;
 					double caveFactor = 0.4 + (k / (double)Chunk.HEIGHT) * 0.5;
 					
-					if ( e > caveFactor ) {
-						chunk.setBlock(BlockData.AIR, i, k, j);
+					// Lattice rows surrounding this block
+					int r00 = (ci * sizeY + ck) * sizeZ;
+					int r01 = (ci * sizeY + ck + 1) * sizeZ;
+					int r10 = ((ci + 1) * sizeY + ck) * sizeZ;
+					int r11 = ((ci + 1) * sizeY + ck + 1) * sizeZ;
+					
+					for(int j=0;j<Chunk.DEPTH;j++) {
+						int cj = j / sx;
+						double fj = (j % sx) / (double)sx;
+						
+						double e00 = lerp(lattice[r00 + cj], lattice[r00 + cj + 1], fj);
+						double e01 = lerp(lattice[r01 + cj], lattice[r01 + cj + 1], fj);
+						double e10 = lerp(lattice[r10 + cj], lattice[r10 + cj + 1], fj);
+						double e11 = lerp(lattice[r11 + cj], lattice[r11 + cj + 1], fj);
+						double e = lerp(lerp(e00, e01, fk), lerp(e10, e11, fk), fi);
+						
+						if ( e > caveFactor ) {
+							chunk.setBlock(BlockData.AIR, i, k, j);
+						}
 					}
 				}
 			}
@@ -185,22 +242,80 @@ public class WorldGeneration {
 	}
 	
 	/**
-	 * Generates trees within a chunk
+	 * Linear interpolation. Returns exactly a when t is 0.
+	 */
+	private static double lerp(double a, double b, double t) {
+		return a + (b - a) * t;
+	}
+	
+	/**
+	 * Returns true if a block is carved out by {@link #generateCaves(Chunk)}. Samples the same lattice points
+	 * as the chunk holding the block, so the result matches for blocks outside the chunk being generated.
+	 * @param worldX
+	 * @param k Height of the block
+	 * @param worldZ
+	 */
+	private boolean isCave(int worldX, int k, int worldZ) {
+		double SCALE = 16;
+		int x = Math.floorDiv(worldX, Chunk.WIDTH) * Chunk.WIDTH;
+		int y = Math.floorDiv(worldZ, Chunk.DEPTH) * Chunk.DEPTH;
+		int i = worldX - x;
+		int j = worldZ - y;
+		
+		int sx = config.getCaveSpacingXZ();
+		int sy = config.getCaveSpacingY();
+		double stepXZ = sx / SCALE;
+		double stepY = sy / SCALE;
+		double x0 = x / SCALE + (i / sx) * stepXZ;
+		double x1 = x / SCALE + (i / sx + 1) * stepXZ;
+		double y0 = (k / sy) * stepY;
+		double y1 = (k / sy + 1) * stepY;
+		double z0 = y / SCALE + (j / sx) * stepXZ;
+		double z1 = y / SCALE + (j / sx + 1) * stepXZ;
+		double fi = (i % sx) / (double)sx;
+		double fk = (k % sy) / (double)sy;
+		double fj = (j % sx) / (double)sx;
+		double caveFactor = 0.4 + (k / (double)Chunk.HEIGHT) * 0.5;
+		
+		double e00 = lerp(terrainNoise.eval(x0, y0, z0), terrainNoise.eval(x0, y0, z1), fj);
+		double e01 = lerp(terrainNoise.eval(x0, y1, z0), terrainNoise.eval(x0, y1, z1), fj);
+		double e10 = lerp(terrainNoise.eval(x1, y0, z0), terrainNoise.eval(x1, y0, z1), fj);
+		double e11 = lerp(terrainNoise.eval(x1, y1, z0), terrainNoise.eval(x1, y1, z1), fj);
+		double e = lerp(lerp(e00, e01, fk), lerp(e10, e11, fk), fi);
+		return e > caveFactor;
+	}
+	
+	/**
+	 * Returns true if {@link #generateTerrain(Chunk, HeightField)} tops a column with grass.
+	 * Also works for the columns next to the chunk, see {@link HeightField#SLOPE_BORDER}.
+	 */
+	private boolean isGrass(HeightField field, int i, int j) {
+		double H = field.getHeight(i, j);
+		double seaOffset = H - seaLevel;
+		double slope = field.getSlope(i, j);
+		if ( slope < 1 && seaOffset-slope <= 1 )
+			return false;
+		
+		return field.getMoisture(i, j) > 0.3 && H >= seaLevel && H < Chunk.HEIGHT;
+	}
+	
+	/**
+	 * Generates the trees that reach into a chunk, including the parts of trees rooted in neighbouring chunks.
+	 * Where a tree grows only depends on the terrain, so each chunk works out the same trees on its own.
 	 * @param chunk
 	 */
-	private static void generateTrees(Chunk chunk) {
+	private void generateTrees(Chunk chunk, HeightField field) {
 		int x = chunk.getWorldLocation().getBlockX();
 		int y = chunk.getWorldLocation().getBlockZ();
 		final double SCALE = 4;
-		final int PADDING = 3;
 		
-		for(int i=-PADDING;i<Chunk.WIDTH+PADDING*2;i++){
-			for(int j=-PADDING;j<Chunk.DEPTH+PADDING*2;j++){
+		for(int i=-TREE_RADIUS;i<Chunk.WIDTH+TREE_RADIUS;i++){
+			for(int j=-TREE_RADIUS;j<Chunk.DEPTH+TREE_RADIUS;j++){
 				double xx = (i + x) / SCALE;
 				double yy = (j + y) / SCALE;
 				
 				double Moisture = Math.pow(
-						getMoisture(x+i, y+j)
+						field.getMoisture(i, j)
 						+ 0.1  * terrainNoise.eval(4 * xx, 4 * yy)
 						+ 0.1 * terrainNoise.eval(8 * xx, 8 * yy)
 						+ 0.1 * treeNoise.eval(12 * xx, 12 * yy)
@@ -219,37 +334,38 @@ public class WorldGeneration {
 				double e2 = treeNoise.eval(16 * xx, 16 * yy)+terrainNoise.eval(32 * xx, 32 * yy);
 				
 				if ( e > 0.6 && e2 > 0.6) {
-					int H = (int) naturalHeight( x + i, y + j );
-					if ( H < World.SEA_LEVEL )
+					int H = (int) field.getHeight(i, j);
+					if ( H < seaLevel )
 						continue;
 					
-					Block block = chunk.getBlock(i, H, j);
-					if ( !block.getData().equals(BlockData.GRASS) )
+					// Only on grass that was not carved out by a cave
+					if ( !isGrass(field, i, j) || isCave(x+i, H, y+j) )
 						continue;
 					
-					spawnTree(chunk.getWorld(), x+i, H+1 ,y+j);
+					spawnTree(chunk, x+i, H+1 ,y+j);
 				}
 			}
 		}
 	}
 
-	/**
-	 * Spawns a tree at a specific location.
-	 * @param world
-	 * @param x
-	 * @param y
-	 * @param z
-	 */
-	public static void spawnTree( World world, int x, int y, int z ) {
+	/** Shape of a tree. The trunk starts at {@link #TREE_X}, 0, {@link #TREE_Z} */
+	private static final Schematic TREE = new Schematic(5, 7, 5);
+	private static final int TREE_X = 2;
+	private static final int TREE_Z = 2;
+	
+	/** Distance from the trunk to the edge of a tree's leaves */
+	private static final int TREE_RADIUS = 2;
+	
+	static {
 		for (int a = 0; a < 5; a++) {
-			world.setBlock(BlockData.LOG, x, y + a, z);
+			TREE.setBlock(BlockData.LOG, TREE_X, a, TREE_Z);
 		}
 		for (int i = -2; i <= 2; i++) {
 			for (int j = -2; j <= 2; j++) {
 				for (int k = 0; k < 2; k++) {
 					if ( i == 0 && j == 0 )
 						continue;
-					world.setBlock(BlockData.LEAF, x + i, y + 3 + k, z + j);
+					TREE.setBlock(BlockData.LEAF, TREE_X + i, 3 + k, TREE_Z + j);
 				}
 			}
 		}
@@ -257,7 +373,45 @@ public class WorldGeneration {
 		for (int i = -1; i <= 1; i++) {
 			for (int j = -1; j <= 1; j++) {
 				for (int k = 0; k < 2; k++) {
-					world.setBlock(BlockData.LEAF, x + i, y + 5 + k, z + j);
+					TREE.setBlock(BlockData.LEAF, TREE_X + i, 5 + k, TREE_Z + j);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Spawns a tree at a specific location, as one batched world edit.
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	public static void spawnTree( World world, int x, int y, int z ) {
+		world.apply(new BlockEditBatch().place(TREE, x - TREE_X, y, z - TREE_Z));
+	}
+
+	/**
+	 * Spawns the part of a tree that lies inside a chunk being generated. Blocks outside the chunk are
+	 * skipped, the chunks they land in add them when they are generated.
+	 * @param chunk Chunk being generated
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	public static void spawnTree( Chunk chunk, int x, int y, int z ) {
+		byte air = BlockData.AIR.getId();
+		int localX = x - TREE_X - chunk.getX() * Chunk.WIDTH;
+		int localZ = z - TREE_Z - chunk.getZ() * Chunk.DEPTH;
+		int minI = Math.max(0, -localX);
+		int maxI = Math.min(TREE.getSizeX(), Chunk.WIDTH - localX);
+		int minK = Math.max(0, -localZ);
+		int maxK = Math.min(TREE.getSizeZ(), Chunk.DEPTH - localZ);
+		for (int i = minI; i < maxI; i++) {
+			for (int k = minK; k < maxK; k++) {
+				for (int j = 0; j < TREE.getSizeY(); j++) {
+					byte blockId = TREE.getBlockId(i, j, k);
+					if ( blockId != air )
+						chunk.setBlock(blockId, localX + i, y + j, localZ + k);
 				}
 			}
 		}
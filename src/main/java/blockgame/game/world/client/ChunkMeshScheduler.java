@@ -0,0 +1,153 @@
+package blockgame.game.world.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * Runs {@link ClientChunk#generateMesh()} on a set of worker threads.
+ * <br>
+ * <br>
+ * Requests are collected with {@link #request(ClientChunk, double)} and handed to the workers with
+ * {@link #flush()}. Lower priorities are meshed first. A chunk is queued at most once; queued jobs
+ * that were not requested again before a flush are cancelled, which drops chunks that left the view.
+ */
+public class ChunkMeshScheduler {
+	private static final int QUEUED = 0;
+	private static final int RUNNING = 1;
+	private static final int FINISHED = 2;
+
+	private final PriorityBlockingQueue<MeshJob> queue = new PriorityBlockingQueue<MeshJob>();
+
+	/** Latest job per chunk that is queued or running */
+	private final Map<ClientChunk, MeshJob> jobs = new HashMap<ClientChunk, MeshJob>();
+
+	/** Requests collected since the last flush */
+	private final Map<ClientChunk, Double> requests = new HashMap<ClientChunk, Double>();
+
+	private final List<MeshJob> drained = new ArrayList<MeshJob>();
+
+	private final Thread[] workers;
+
+	public ChunkMeshScheduler(int threads) {
+		this.workers = new Thread[Math.max(1, threads)];
+		for (int i = 0; i < workers.length; i++) {
+			Thread thread = new Thread(() -> work(), "Chunk Mesher " + (i + 1));
+			thread.setDaemon(true);
+			thread.start();
+			workers[i] = thread;
+		}
+	}
+
+	/**
+	 * Ask for a chunk to be meshed. Takes effect on the next {@link #flush()}.
+	 * @param chunk
+	 * @param priority Lower values are meshed first
+	 */
+	public synchronized void request(ClientChunk chunk, double priority) {
+		requests.put(chunk, priority);
+	}
+
+	/**
+	 * Replace the queue with the requests made since the last flush. Queued jobs that were not
+	 * requested again are cancelled. Jobs that are already running are left alone.
+	 */
+	public synchronized void flush() {
+		// Pull everything out so priorities can change without breaking the heap
+		queue.drainTo(drained);
+		for (int i = 0; i < drained.size(); i++) {
+			MeshJob job = drained.get(i);
+			if ( !requests.containsKey(job.chunk) ) {
+				job.state = FINISHED;
+				jobs.remove(job.chunk);
+			}
+		}
+		drained.clear();
+
+		for (Map.Entry<ClientChunk, Double> entry : requests.entrySet()) {
+			ClientChunk chunk = entry.getKey();
+			MeshJob job = jobs.get(chunk);
+
+			// Already meshing. If it changes again it will be requested again.
+			if ( job != null && job.state == RUNNING )
+				continue;
+
+			if ( job == null ) {
+				job = new MeshJob(chunk);
+				jobs.put(chunk, job);
+			}
+
+			job.priority = entry.getValue();
+			queue.add(job);
+		}
+		requests.clear();
+	}
+
+	/**
+	 * @return The amount of chunks waiting to be meshed.
+	 */
+	public int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * Stop the worker threads. Meshes already being built still finish.
+	 */
+	public void shutdown() {
+		for (Thread worker : workers)
+			worker.interrupt();
+	}
+
+	/**
+	 * @return The amount of worker threads.
+	 */
+	public int getThreadCount() {
+		return workers.length;
+	}
+
+	private void work() {
+		while(true) {
+			MeshJob job;
+			try {
+				job = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			// Skip cancelled jobs and duplicates of a job that already ran
+			synchronized(this) {
+				if ( job.state != QUEUED )
+					continue;
+				job.state = RUNNING;
+			}
+
+			try {
+				job.chunk.generateMesh();
+			} catch (Throwable e) {
+				e.printStackTrace();
+			} finally {
+				synchronized(this) {
+					job.state = FINISHED;
+					jobs.remove(job.chunk, job);
+				}
+			}
+		}
+	}
+
+	static class MeshJob implements Comparable<MeshJob> {
+		final ClientChunk chunk;
+		volatile int state = QUEUED;
+		double priority;
+
+		MeshJob(ClientChunk chunk) {
+			this.chunk = chunk;
+		}
+
+		@Override
+		public int compareTo(MeshJob o) {
+			return Double.compare(priority, o.priority);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package blockgame.game.world.client;
+
+import blockgame.game.BlockData;
+import blockgame.game.TextureInfo;
+import blockgame.game.TextureType;
+import blockgame.game.world.Chunk;
+import blockgame.game.world.ChunkSnapshot;
+import blockgame.gl.PackedVertex;
+import blockgame.gl.PackedVertexStream;
+
+/**
+ * Turns the blocks of a chunk into quads.
+ * <br>
+ * <br>
+ * Vertices are written as {@link PackedVertex}. Texture coordinates are an atlas tile plus a local
+ * coordinate measured in blocks. The shader wraps the local part back into the tile, which lets a
+ * single quad repeat its texture over several blocks.
+ */
+public abstract class ChunkMesher {
+
+	/** Amount of tiles along one side of the terrain atlas */
+	public static final int ATLAS_TILES = 16;
+
+	public static final int FACE_BOTTOM = 0;
+	public static final int FACE_TOP = 1;
+	public static final int FACE_LEFT = 2;
+	public static final int FACE_RIGHT = 3;
+	public static final int FACE_FRONT = 4;
+	public static final int FACE_BACK = 5;
+
+	/** Texture slot used by each face */
+	protected static final TextureType[] FACE_TEXTURE = { TextureType.BOTTOM, TextureType.TOP, TextureType.LEFT, TextureType.RIGHT, TextureType.FRONT, TextureType.BACK };
+
+	/** Neighbour direction of each face */
+	protected static final int[][] FACE_NORMAL = PackedVertex.NORMALS;
+	
+	/** Vertex brightness of each light level. Every level is 80% as bright as the one above */
+	protected static final int[] LIGHT_CURVE = new int[BlockData.MAX_LIGHT + 1];
+
+	static {
+		for (int i = 0; i < LIGHT_CURVE.length; i++) {
+			LIGHT_CURVE[i] = (int) Math.round(255 * Math.pow(0.8, BlockData.MAX_LIGHT - i));
+		}
+	}
+
+	/** Axis the face is perpendicular to (0=x, 1=y, 2=z) */
+	protected static final int[] FACE_AXIS = { 1, 1, 0, 0, 2, 2 };
+
+	/** Axis the texture s coordinate runs along, and in which direction */
+	protected static final int[] FACE_U_AXIS = { 0, 0, 2, 2, 0, 0 };
+	protected static final int[] FACE_U_SIGN = { 1, -1, -1, 1, -1, 1 };
+
+	/** Axis the texture t coordinate runs along, and in which direction */
+	protected static final int[] FACE_V_AXIS = { 2, 2, 1, 1, 1, 1 };
+	protected static final int[] FACE_V_SIGN = { 1, 1, -1, -1, -1, -1 };
+
+	/**
+	 * Write the geometry of a whole chunk into a stream. Positions are chunk-local.
+	 * @param snapshot Blocks of the chunk and the border of its neighbours
+	 * @param stream
+	 */
+	public void generate(ChunkSnapshot snapshot, PackedVertexStream stream) {
+		for (int i = 0; i < Chunk.SECTIONS; i++) {
+			generate(snapshot, i, stream);
+		}
+	}
+
+	/**
+	 * Write the geometry of one section of a chunk into a stream. Positions are chunk-local.
+	 * @param snapshot Blocks of the chunk and the border of its neighbours
+	 * @param section Section index, y >> 4
+	 * @param stream
+	 */
+	public abstract void generate(ChunkSnapshot snapshot, int section, PackedVertexStream stream);
+
+	/**
+	 * Returns whether the block at a snapshot-local coordinate hides faces next to it.
+	 */
+	protected static boolean hasOccluder(ChunkSnapshot snapshot, int x, int y, int z) {
+		byte blockid = snapshot.getBlockId( x, y, z );
+		BlockData data = BlockData.getBlockData(blockid);
+		if ( data == null )
+			return false;
+
+		return BlockData.isOcclude(data);
+	}
+
+	/**
+	 * Returns the vertex brightness of a face, from the light of the block it faces.
+	 * @param x Snapshot-local x of the block the face belongs to
+	 * @param y Snapshot-local y of the block the face belongs to
+	 * @param z Snapshot-local z of the block the face belongs to
+	 * @param face FACE_* constant
+	 */
+	protected static int getFaceLight(ChunkSnapshot snapshot, int x, int y, int z, int face) {
+		int[] normal = FACE_NORMAL[face];
+		return LIGHT_CURVE[snapshot.getLight(x + normal[0], y + normal[1], z + normal[2])];
+	}
+
+	/**
+	 * Returns the texture drawn on a face of a block. Defaults to ALL if the face is not defined explicitly.
+	 */
+	protected static TextureInfo getFaceTexture(BlockData blockType, int face) {
+		TextureInfo[] tinfo = blockType.getTextureInformation();
+		TextureInfo info = BlockData.getTextureInfoByType( tinfo, FACE_TEXTURE[face] );
+		if ( info == null )
+			info = BlockData.getTextureInfoByType( tinfo, TextureType.ALL );
+
+		return info;
+	}
+
+	/**
+	 * Emit a quad for a face covering a rectangle of blocks.
+	 * @param stream
+	 * @param face FACE_* constant
+	 * @param x Minimum chunk-local block x of the rectangle
+	 * @param y Minimum chunk-local block y of the rectangle
+	 * @param z Minimum chunk-local block z of the rectangle
+	 * @param width Size of the rectangle along the face's u axis, in blocks
+	 * @param height Size of the rectangle along the face's v axis, in blocks
+	 * @param tinfo Texture tile repeated over the rectangle
+	 * @param light Vertex brightness, see {@link #getFaceLight(ChunkSnapshot, int, int, int, int)}
+	 */
+	protected static void createQuad(PackedVertexStream stream, int face, int x, int y, int z, int width, int height, TextureInfo tinfo, int light) {
+		int[] normal = FACE_NORMAL[face];
+		int axis = FACE_AXIS[face];
+		int uAxis = FACE_U_AXIS[face];
+		int vAxis = FACE_V_AXIS[face];
+
+		// Edge vectors
+		int du = FACE_U_SIGN[face] * width;
+		int dv = FACE_V_SIGN[face] * height;
+		int dux = uAxis == 0 ? du : 0,	duy = uAxis == 1 ? du : 0,	duz = uAxis == 2 ? du : 0;
+		int dvx = vAxis == 0 ? dv : 0,	dvy = vAxis == 1 ? dv : 0,	dvz = vAxis == 2 ? dv : 0;
+
+		// First corner. Faces pointing in a positive direction sit on the far side of the block
+		int x1 = x + (normal[axis] > 0 && axis == 0 ? 1 : 0) - Math.min(dux, 0) - Math.min(dvx, 0);
+		int y1 = y + (normal[axis] > 0 && axis == 1 ? 1 : 0) - Math.min(duy, 0) - Math.min(dvy, 0);
+		int z1 = z + (normal[axis] > 0 && axis == 2 ? 1 : 0) - Math.min(duz, 0) - Math.min(dvz, 0);
+
+		int s = tinfo.getS();
+		int t = tinfo.getT();
+
+		int x2 = x1 + dux,	y2 = y1 + duy,	z2 = z1 + duz;
+		int x3 = x2 + dvx,	y3 = y2 + dvy,	z3 = z2 + dvz;
+		int x4 = x1 + dvx,	y4 = y1 + dvy,	z4 = z1 + dvz;
+
+		// Four corners, triangulated by the shared quad index buffer
+		stream.vertex( x1, y1, z1, face, 0, 0, s, t, light );
+		stream.vertex( x2, y2, z2, face, width, 0, s, t, light );
+		stream.vertex( x3, y3, z3, face, width, height, s, t, light );
+		stream.vertex( x4, y4, z4, face, 0, height, s, t, light );
+	}
+}
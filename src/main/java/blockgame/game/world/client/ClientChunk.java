@@ -1,172 +1,153 @@
 package blockgame.game.world.client;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import org.joml.Matrix4f;
-import org.joml.Vector3f;
 
 import blockgame.Application;
 import blockgame.RenderThread;
 import blockgame.RenderableCallback;
 import blockgame.Resources;
-import blockgame.game.BlockData;
-import blockgame.game.TextureInfo;
-import blockgame.game.TextureType;
 import blockgame.game.world.Chunk;
+import blockgame.game.world.ChunkSnapshot;
+import blockgame.game.world.ChunkStatus;
 import blockgame.game.world.World;
 import blockgame.gl.BufferedMesh;
-import blockgame.gl.Vertex;
+import blockgame.gl.PackedVertexStream;
 
 public class ClientChunk extends Chunk implements RenderableCallback {
 	
-	private BufferedMesh mesh;
-	private BufferedMesh queuedMesh;
+	/** Mesh of each section. Only touched by the render thread */
+	private final BufferedMesh[] meshes = new BufferedMesh[SECTIONS];
+	
+	/** Meshes built by the mesh threads, waiting to replace the ones in {@link #meshes} */
+	private final AtomicReferenceArray<BufferedMesh> queuedMeshes = new AtomicReferenceArray<BufferedMesh>(SECTIONS);
+	
+	private boolean hasMesh;
 	
 	private double tOff = -HEIGHT;
+	
+	/** Set once the chunk has left the world */
+	private volatile boolean disposed;
+	
+	/** Mesher used to build chunk geometry */
+	public static ChunkMesher mesher = new NaiveChunkMesher();
+	
+	/** Per-thread scratch buffer reused between mesh builds */
+	private static final ThreadLocal<PackedVertexStream> meshStream = ThreadLocal.withInitial(() -> new PackedVertexStream());
+	
+	/** Per-thread copy of the blocks being meshed */
+	private static final ThreadLocal<ChunkSnapshot> meshSnapshot = ThreadLocal.withInitial(() -> new ChunkSnapshot());
 
 	public ClientChunk(World world, int x, int y) {
 		super(world, x, y);
-		this.loaded = false;
 	}
 
-	protected boolean isUpdated() {
-		return this.updated;
-	}
-	
 	protected void unload() {
 		super.unload();
 	}
 	
 	protected void generateMesh() {
-		if ( !updated )
+		if ( disposed )
 			return;
 		
-		loaded = true;
-		updated = false;
+		// Stage before meshing. If the chunk is hidden while meshing, it stays hidden.
+		ChunkStatus status = getStatus();
 		
-		Vertex[] tempVerts = new Vertex[(WIDTH * DEPTH * HEIGHT) * 36];
-		int vertsAdded = 0;
-		int facesAdded = 0;
-
-		Vector3f t1 = new Vector3f();
-		Vector3f t2 = new Vector3f();
-		Vector3f t3 = new Vector3f();
-		Vector3f t4 = new Vector3f();
-		Vector3f tn = new Vector3f();
+		int dirty = takeDirtySections();
+		if ( dirty == 0 )
+			return;
+		
+		PackedVertexStream stream = meshStream.get();
+		
+		// Copy blocks, so generation can keep writing while we mesh
+		ChunkSnapshot snapshot = meshSnapshot.get();
+		snapshot.capture(this, dirty);
+		
+		// Rebuild only the sections that changed
+		for (int i = 0; i < SECTIONS; i++) {
+			if ( (dirty & (1 << i)) == 0 )
+				continue;
+			
+			stream.clear();
+			mesher.generate(snapshot, i, stream);
+			
+			// Evicted while meshing
+			if ( disposed )
+				break;
+			
+			queuedMeshes.set(i, new BufferedMesh(stream));
+		}
+		stream.clear();
 		
-		for (int i = 0; i < WIDTH; i++) {
-			for (int j = 0; j < HEIGHT; j++) {
-				for (int k = 0; k < DEPTH; k++) {
-					byte b = getBlockId( i, j, k );
-					
-					BlockData blockType = BlockData.getBlockData(b);
-					
-					TextureInfo[] tinfo = blockType.getTextureInformation();
-					
-					// Do not draw air
-					if ( blockType.equals(BlockData.AIR) )
-						continue;
-					
-					// Get texture information for each face
-					TextureInfo all = BlockData.getTextureInfoByType( tinfo, TextureType.ALL );
-					TextureInfo top = BlockData.getTextureInfoByType( tinfo, TextureType.TOP );
-					TextureInfo bottom = BlockData.getTextureInfoByType( tinfo, TextureType.BOTTOM );
-					TextureInfo left = BlockData.getTextureInfoByType( tinfo, TextureType.LEFT );
-					TextureInfo right = BlockData.getTextureInfoByType( tinfo, TextureType.RIGHT );
-					TextureInfo front = BlockData.getTextureInfoByType( tinfo, TextureType.FRONT );
-					TextureInfo back = BlockData.getTextureInfoByType( tinfo, TextureType.BACK );
+		if ( !disposed && (status == ChunkStatus.LIGHTED || status == ChunkStatus.UNLOADING) )
+			compareAndSetStatus(status, ChunkStatus.MESHED);
+	}
 
-					// default to ALL, if explicit face is not defined
-					top = top == null ? all : top;
-					bottom = bottom == null ? all : bottom;
-					left = left == null ? all : left;
-					right = right == null ? all : right;
-					front = front == null ? all : front;
-					back = back == null ? all : back;
+	/**
+	 * @return Vertical offset the chunk is currently drawn at, from the load/unload animation.
+	 */
+	protected float getRenderOffset() {
+		return (float) this.tOff;
+	}
 
-					// Compute world coordinates
-					int worldx = x * WIDTH + i;
-					int worldy = j;
-					int worldz = z * DEPTH + k;
-					
-					// Compute needing face
-					boolean needTop = !hasOccluder( worldx, worldy + 1, worldz );
-					boolean needBottom = !hasOccluder( worldx, worldy - 1, worldz );
-					boolean needLeft = !hasOccluder( worldx - 1, worldy, worldz );
-					boolean needRight = !hasOccluder( worldx + 1, worldy, worldz );
-					boolean needFront = !hasOccluder( worldx, worldy, worldz + 1 );
-					boolean needBack = !hasOccluder( worldx, worldy, worldz - 1 );
-					
-					// Create new mesh
-					if ( needBottom )
-						vertsAdded += createFace(facesAdded++, tempVerts, t1.zero().add(0, 0, 0).add(i, j, k), t2.zero().add(1, 0, 0).add(i, j, k), t3.zero().add(1, 0, 1).add(i, j, k), t4.zero().add(0, 0, 1).add(i, j, k), tn.zero().add(0, -1, 0), bottom); // Bottom
-					
-					if ( needTop )
-						vertsAdded += createFace(facesAdded++, tempVerts, t1.zero().add(1, 1, 0).add(i, j, k), t2.zero().add(0, 1, 0).add(i, j, k), t3.zero().add(0, 1, 1).add(i, j, k), t4.zero().add(1, 1, 1).add(i, j, k), tn.zero().add(0, 1, 0), top); // Top
-					
-					if ( needLeft )
-						vertsAdded += createFace(facesAdded++, tempVerts, t1.zero().add(0, 1, 1).add(i, j, k), t2.zero().add(0, 1, 0).add(i, j, k), t3.zero().add(0, 0, 0).add(i, j, k), t4.zero().add(0, 0, 1).add(i, j, k), tn.zero().add(-1, 0, 0), left); // Left
-					
-					if ( needRight )
-						vertsAdded += createFace(facesAdded++, tempVerts, t1.zero().add(1, 1, 0).add(i, j, k), t2.zero().add(1, 1, 1).add(i, j, k), t3.zero().add(1, 0, 1).add(i, j, k), t4.zero().add(1, 0, 0).add(i, j, k), tn.zero().add(1, 0, 0), right); // Right
-					
-					if ( needFront )
-						vertsAdded += createFace(facesAdded++, tempVerts, t1.zero().add(1, 1, 1).add(i, j, k), t2.zero().add(0, 1, 1).add(i, j, k), t3.zero().add(0, 0, 1).add(i, j, k), t4.zero().add(1, 0, 1).add(i, j, k), tn.zero().add(0, 0, 1), front); // Front
-					
-					if ( needBack )
-						vertsAdded += createFace(facesAdded++, tempVerts, t1.zero().add(0, 1, 0).add(i, j, k), t2.zero().add(1, 1, 0).add(i, j, k), t3.zero().add(1, 0, 0).add(i, j, k), t4.zero().add(0, 0, 0).add(i, j, k), tn.zero().add(0, 0, -1), back); // Back
-				}
-			}
-		}
+	@Override
+	public long getMemoryUsage() {
+		long bytes = super.getMemoryUsage();
 		
-		// Create new mesh
-		BufferedMesh tempMesh = new BufferedMesh(vertsAdded);
-		Vertex[] finalVert = tempMesh.getVertices();
-		System.arraycopy(tempVerts, 0, finalVert, 0, vertsAdded);
-		tempVerts = null;
+		for (int i = 0; i < SECTIONS; i++) {
+			BufferedMesh mesh = this.meshes[i];
+			if ( mesh != null )
+				bytes += mesh.getByteSize();
+		}
 		
-		// Clean old mesh
-		this.queuedMesh = tempMesh;
+		return bytes;
 	}
 	
-	private boolean hasOccluder(int x, int y, int z) {
-		byte blockid = world.getBlockId( x, y, z );
-		BlockData data = BlockData.getBlockData(blockid);
-		if ( data == null )
-			return false;
+	@Override
+	protected void dispose() {
+		disposed = true;
 		
-		return BlockData.isOcclude(data);
+		// Meshes are deleted on the render thread
+		((ClientWorld) world).releaseChunk(this);
 	}
-
-	private int createFace(int index, Vertex[] vertArray, Vector3f v1, Vector3f v2, Vector3f v3, Vector3f v4, Vector3f normal, TextureInfo tinfo) {		
-		float t = 16;
-		
-		vertArray[(index * 6) + 0] = new Vertex( v1.x, v1.y, v1.z, normal.x, normal.y, normal.z, (tinfo.getS()+0)/t, (tinfo.getT()+0)/t );
-		vertArray[(index * 6) + 1] = new Vertex( v2.x, v2.y, v2.z, normal.x, normal.y, normal.z, (tinfo.getS()+1)/t, (tinfo.getT()+0)/t );
-		vertArray[(index * 6) + 2] = new Vertex( v3.x, v3.y, v3.z, normal.x, normal.y, normal.z, (tinfo.getS()+1)/t, (tinfo.getT()+1)/t );
-
-		vertArray[(index * 6) + 3] = new Vertex( v3.x, v3.y, v3.z, normal.x, normal.y, normal.z, (tinfo.getS()+1)/t, (tinfo.getT()+1)/t );
-		vertArray[(index * 6) + 4] = new Vertex( v4.x, v4.y, v4.z, normal.x, normal.y, normal.z, (tinfo.getS()+0)/t, (tinfo.getT()+1)/t );
-		vertArray[(index * 6) + 5] = new Vertex( v1.x, v1.y, v1.z, normal.x, normal.y, normal.z, (tinfo.getS()+0)/t, (tinfo.getT()+0)/t );
-		
-		return 6;
+	
+	/**
+	 * Delete this chunk's meshes. Must be called from the render thread.
+	 */
+	protected void releaseMeshes() {
+		for (int i = 0; i < SECTIONS; i++) {
+			if ( this.meshes[i] != null )
+				this.meshes[i].cleanup();
+			
+			this.meshes[i] = null;
+			this.queuedMeshes.set(i, null);
+		}
+		this.hasMesh = false;
 	}
-
+	
 	@Override
 	public void render() {
-		if ( this.queuedMesh != null ) {
-			BufferedMesh old = this.mesh;
-			this.mesh = this.queuedMesh;
-			this.queuedMesh = null;
+		// Swap in rebuilt sections
+		for (int i = 0; i < SECTIONS; i++) {
+			BufferedMesh queued = this.queuedMeshes.getAndSet(i, null);
+			if ( queued == null )
+				continue;
+			
+			BufferedMesh old = this.meshes[i];
+			this.meshes[i] = queued;
+			this.hasMesh = true;
 			
 			if ( old != null )
 				old.cleanup();
 		}
 		
 		// Must have mesh
-		if ( this.mesh == null )
+		if ( !this.hasMesh )
 			return;
 		
 		// Chunk animation
-		if ( !loaded ) {
+		if ( getStatus() == ChunkStatus.UNLOADING ) {
 			this.tOff = tOff - (HEIGHT+tOff)*RenderThread.delta;
 			if ( tOff <= -HEIGHT * 0.6 )
 				return;
@@ -175,6 +156,11 @@ public class ClientChunk extends Chunk implements RenderableCallback {
 		}
 		
 		// Render
-		this.mesh.render(Application.baseShader, new Matrix4f().translate(x * WIDTH, (float) tOff, z * DEPTH), Resources.terrainMaterial);
+		Matrix4f worldMatrix = new Matrix4f().translate(x * WIDTH, (float) tOff, z * DEPTH);
+		for (int i = 0; i < SECTIONS; i++) {
+			BufferedMesh mesh = this.meshes[i];
+			if ( mesh != null && mesh.getSize() > 0 )
+				mesh.render(Application.baseShader, worldMatrix, Resources.terrainMaterial);
+		}
 	}
 }
@@ -1,13 +1,10 @@
 package blockgame.game.world.client;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 import blockgame.Application;
@@ -15,20 +12,42 @@ import blockgame.Camera;
 import blockgame.MainGame;
 import blockgame.game.world.Chunk;
 import blockgame.game.world.ChunkManager;
+import blockgame.game.world.ChunkStatus;
 import blockgame.game.world.World;
 
 public class ClientChunkManager extends ChunkManager {
 	
+	/** Amount of threads building chunk meshes */
+	public static int MESH_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	
+	/** Chunks within this many chunks of the camera's chunk are generated even outside the frustum */
+	public static int NEAR_GENERATION_DISTANCE = 3;
+	
+	/** Added to the priority of chunks that are near the camera but outside the frustum */
+	private static final double OUT_OF_FRUSTUM_PRIORITY = Math.pow(MainGame.VIEW_DISTANCE * Chunk.WIDTH, 2);
+	
 	private Map<Chunk, Long> chunkTimeout = new HashMap<Chunk, Long>();
+	
+	private final ChunkMeshScheduler meshScheduler = new ChunkMeshScheduler(MESH_THREADS);
+	
+	/** Frustum used by the mesh thread */
+	private final FrustumCuller meshCuller = new FrustumCuller();
+	
+	/** Frustum used by the generation thread */
+	private final FrustumCuller generationCuller = new FrustumCuller();
 
-	public ClientChunkManager() {
-		super();
+	public ClientChunkManager(World world) {
+		super(world, MainGame.VIEW_DISTANCE);
+		
+		// Stream chunks around the camera
+		if ( Application.camera != null )
+			addObserver(Application.camera);
 		
 		// Chunk Mesh Generation Thread
 		new Thread(new Runnable() {
 			@Override
 			public void run() {
-				while(true) {
+				while(isRunning()) {
 					try {
 						Thread.sleep(5);
 					} catch (InterruptedException e) {
@@ -39,44 +58,39 @@ public class ClientChunkManager extends ChunkManager {
 					Camera camera = Application.camera;
 					final Vector3f cameraLocation = camera.getPosition();
 					
+					// Forget chunks that were evicted
+					chunkTimeout.keySet().removeIf(c -> world.getChunk(c.getX(), c.getZ()) != c);
+					
 					// Get list of chunks
-					List<Chunk> chunks = MainGame.world.getLoadedChunks();
+					List<Chunk> chunks = world.getLoadedChunks();
 					
 					// Copy chunk list
-					List<ClientChunk> sortedChunks = new ArrayList<ClientChunk>();
+					List<ClientChunk> loadedChunks = new ArrayList<ClientChunk>();
 					synchronized(chunks) {
 						for (Chunk chunk : chunks) {
-							sortedChunks.add((ClientChunk)chunk);
+							loadedChunks.add((ClientChunk)chunk);
 						}
 					}
 					
-					// Sort based on camera location
-					Collections.sort(sortedChunks, new Comparator<Chunk>() {
-						@Override
-						public int compare(Chunk c1, Chunk c2) {
-							return (int) (c1.getWorldLocation().toVector3f().distanceSquared(cameraLocation) - c2.getWorldLocation().toVector3f().distanceSquared(cameraLocation));
-						}
-					});
-					
-					Matrix4f viewMatrix = camera.getViewMatrix();
-					Matrix4f projectionMatrix = camera.getProjectionMatrix();
-					Matrix4f viewProjectionMatrix = projectionMatrix.mul(viewMatrix, new Matrix4f());
-					
-					long start = System.currentTimeMillis();
+					meshCuller.update(camera.getProjectionMatrix(), camera.getViewMatrix());
+					Vector3f groundLocation = new Vector3f(cameraLocation.x, 0, cameraLocation.z);
 					
 					// Update
-					for (int i = 0; i < sortedChunks.size(); i++) {
-						ClientChunk c = sortedChunks.get(i);
+					for (int i = 0; i < loadedChunks.size(); i++) {
+						ClientChunk c = loadedChunks.get(i);
 						
-						// Project chunk position onto screen (3d --> 2d)
-						boolean isInView = isChunkInFrustum(viewProjectionMatrix, c) || isChunkNear(camera.getPosition(), c);
+						// Test the chunk's column against the view frustum
+						boolean inFrustum = meshCuller.isVisible(c);
+						boolean isInView = inFrustum || isChunkNear(cameraLocation, c);
 						
 						// If chunk is too far away, not visible
-						if ( c.getWorldLocation().toVector3f().distanceSquared(camera.getPosition().sub(0, camera.getPosition().y, 0)) > Math.pow(MainGame.VIEW_DISTANCE * Chunk.WIDTH, 2) )
+						float distanceSquared = c.getWorldLocation().toVector3f().distanceSquared(groundLocation);
+						if ( distanceSquared > Math.pow(MainGame.VIEW_DISTANCE * Chunk.WIDTH, 2) )
 							isInView = false;
 						
 						// Start culling checks
-						if ( c.loaded() ) {
+						ChunkStatus status = c.getStatus();
+						if ( status == ChunkStatus.MESHED ) {
 							
 							// Unload chunks if they've been invisible for too long
 							if ( chunkTimeout.containsKey(c) /*&& System.currentTimeMillis() > chunkTimeout.get(c)*/ ) {
@@ -100,20 +114,55 @@ public class ClientChunkManager extends ChunkManager {
 							chunkTimeout.remove(c);
 						}
 						
-						// Update chunk
-						if ( c.isUpdated() && isInView ) {
-							c.generateMesh();
+						// Queue chunk for meshing once its neighbours are done. Nearest first, chunks in the frustum before ones only near the camera.
+						if ( status.isAtLeast(ChunkStatus.LIGHTED) && c.isUpdated() && isInView ) {
+							double priority = distanceSquared;
+							if ( !inFrustum )
+								priority += OUT_OF_FRUSTUM_PRIORITY;
+							
+							meshScheduler.request(c, priority);
 						}
-						
-						// If we're taking a long time to finish updating, break so that we can re-order chunks.
-						if ( System.currentTimeMillis() - start > UPDATE_TIMEOUT )
-							break;
 					}
+					
+					// Hand requests to the mesh workers. Chunks that were not requested again are dropped.
+					meshScheduler.flush();
 				}
 			}
 		}).start();
 	}
 	
+	@Override
+	public void shutdown() {
+		super.shutdown();
+		meshScheduler.shutdown();
+	}
+	
+	@Override
+	protected boolean shouldGenerate(Chunk chunk) {
+		Camera camera = Application.camera;
+		if ( camera == null )
+			return true;
+		
+		generationCuller.update(camera.getProjectionMatrix(), camera.getViewMatrix());
+		return isGenerationCandidate(generationCuller, camera.getPosition(), chunk);
+	}
+	
+	/**
+	 * Client generation policy. A chunk is only lit once its eight neighbours exist, so this accepts chunks
+	 * next to the frustum as well as the chunks around the camera that are meshed without being visible.
+	 * @param culler Frustum of the camera
+	 * @param eyePosition Camera position. This is in block-space.
+	 * @param chunk
+	 */
+	public static boolean isGenerationCandidate(FrustumCuller culler, Vector3f eyePosition, Chunk chunk) {
+		int eyeX = (int)Math.floor(eyePosition.x/(float)Chunk.WIDTH);
+		int eyeZ = (int)Math.floor(eyePosition.z/(float)Chunk.DEPTH);
+		if ( Math.max(Math.abs(chunk.getX()-eyeX), Math.abs(chunk.getZ()-eyeZ)) <= NEAR_GENERATION_DISTANCE )
+			return true;
+		
+		return culler.isNearVisible(chunk);
+	}
+	
 	@Override
 	protected Chunk newChunk(World world, int i, int j) {
 		return new ClientChunk(world, i, j);
@@ -1,26 +1,85 @@
 package blockgame.game.world.client;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import blockgame.Application;
+import blockgame.Camera;
 import blockgame.RenderableCallback;
+import blockgame.game.world.Chunk;
 import blockgame.game.world.ChunkManager;
 import blockgame.game.world.World;
+import blockgame.game.world.WorldConfig;
+import blockgame.game.world.storage.RegionStorage;
 
 public class ClientWorld extends World implements RenderableCallback {
+	
+	/** Chunks removed from the world whose meshes still need to be deleted */
+	private final Queue<ClientChunk> released = new ConcurrentLinkedQueue<ClientChunk>();
+	
+	private final List<Chunk> renderList = new ArrayList<Chunk>();
+	
+	/** Chunks drawn in the last frame */
+	private final List<ClientChunk> visibleChunks = new ArrayList<ClientChunk>();
+	
+	private final FrustumCuller culler = new FrustumCuller();
+	
+	public ClientWorld() {
+		super();
+	}
+	
+	public ClientWorld(WorldConfig config, RegionStorage storage) {
+		super(config, storage);
+	}
 
 	@Override
 	protected ChunkManager createChunkManager() {
-		return new ClientChunkManager();
+		return new ClientChunkManager(this);
+	}
+	
+	/**
+	 * Queue the meshes of a chunk that left the world for deletion on the render thread.
+	 * @param chunk
+	 */
+	protected void releaseChunk(ClientChunk chunk) {
+		released.add(chunk);
 	}
 	
 	@Override
 	public void render() {
-		for (int i = 0; i < chunks.size(); i++) {
-			if ( i >= chunks.size() )
-				continue;
-			
-			ClientChunk c = (ClientChunk) chunks.get(i);
-			if ( c == null )
-				continue;
-			c.render();
+		// Delete meshes of evicted chunks
+		ClientChunk evicted;
+		while ( (evicted = released.poll()) != null ) {
+			evicted.releaseMeshes();
+		}
+		
+		// Copy chunk list, chunks may be added and removed while rendering
+		synchronized(chunks) {
+			renderList.addAll(chunks);
 		}
+		
+		// Find visible chunks. Test from where a chunk is drawn up to where it settles, so sliding chunks aren't culled.
+		Camera camera = Application.camera;
+		culler.update(camera.getProjectionMatrix(), camera.getViewMatrix());
+		visibleChunks.clear();
+		for (int i = 0; i < renderList.size(); i++) {
+			ClientChunk c = (ClientChunk) renderList.get(i);
+			if ( culler.isVisible(c, Math.min(0, c.getRenderOffset()), Chunk.HEIGHT) )
+				visibleChunks.add(c);
+		}
+		renderList.clear();
+		
+		for (int i = 0; i < visibleChunks.size(); i++) {
+			visibleChunks.get(i).render();
+		}
+	}
+	
+	/**
+	 * @return The chunks drawn in the last frame.
+	 */
+	public List<ClientChunk> getVisibleChunks() {
+		return this.visibleChunks;
 	}
 }
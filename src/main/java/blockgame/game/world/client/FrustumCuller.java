@@ -0,0 +1,54 @@
+package blockgame.game.world.client;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+
+import blockgame.game.world.Chunk;
+
+/**
+ * Tests chunk bounding boxes against the six planes of a view frustum. Only needs a matrix,
+ * no GL context. Not thread-safe; use one culler per thread.
+ */
+public class FrustumCuller {
+	private final FrustumIntersection frustum = new FrustumIntersection();
+	private final Matrix4f viewProjectionMatrix = new Matrix4f();
+
+	/**
+	 * Take the frustum planes from a camera.
+	 * @param projectionMatrix
+	 * @param viewMatrix
+	 */
+	public FrustumCuller update(Matrix4f projectionMatrix, Matrix4f viewMatrix) {
+		projectionMatrix.mul(viewMatrix, viewProjectionMatrix);
+		frustum.set(viewProjectionMatrix);
+		return this;
+	}
+
+	/**
+	 * @return True if any part of the chunk's column is inside the frustum.
+	 */
+	public boolean isVisible(Chunk chunk) {
+		return isVisible(chunk, 0, Chunk.HEIGHT);
+	}
+
+	/**
+	 * @param chunk
+	 * @param minY Bottom of the tested range. This is in block-space.
+	 * @param maxY Top of the tested range. This is in block-space.
+	 * @return True if any part of the chunk between minY and maxY is inside the frustum.
+	 */
+	public boolean isVisible(Chunk chunk, float minY, float maxY) {
+		float x = chunk.getX() * Chunk.WIDTH;
+		float z = chunk.getZ() * Chunk.DEPTH;
+		return frustum.testAab(x, minY, z, x + Chunk.WIDTH, maxY, z + Chunk.DEPTH);
+	}
+
+	/**
+	 * @return True if any part of the chunk's column or of its eight neighbours is inside the frustum.
+	 */
+	public boolean isNearVisible(Chunk chunk) {
+		float x = chunk.getX() * Chunk.WIDTH;
+		float z = chunk.getZ() * Chunk.DEPTH;
+		return frustum.testAab(x - Chunk.WIDTH, 0, z - Chunk.DEPTH, x + 2 * Chunk.WIDTH, Chunk.HEIGHT, z + 2 * Chunk.DEPTH);
+	}
+}
@@ -0,0 +1,112 @@
+package blockgame.game.world.client;
+
+import blockgame.game.BlockData;
+import blockgame.game.TextureInfo;
+import blockgame.game.world.Chunk;
+import blockgame.game.world.ChunkSection;
+import blockgame.game.world.ChunkSnapshot;
+import blockgame.gl.PackedVertexStream;
+
+/**
+ * Merges coplanar faces that share a texture and light level into larger quads. Every slice of a section
+ * is swept once per face direction; visible faces are written into a 2d mask which is then
+ * covered with as few rectangles as possible. Textures repeat across the merged quads.
+ */
+public class GreedyChunkMesher extends ChunkMesher {
+
+	private static final int[] SIZE = { Chunk.WIDTH, ChunkSection.SIZE, Chunk.DEPTH };
+
+	@Override
+	public void generate(ChunkSnapshot snapshot, int section, PackedVertexStream stream) {
+		// Nothing to draw in empty sections
+		if ( snapshot.isSectionEmpty(section) )
+			return;
+		
+		TextureInfo[] mask = new TextureInfo[Math.max(Chunk.WIDTH, Chunk.DEPTH) * ChunkSection.SIZE];
+		int[] lightMask = new int[mask.length];
+		int[] pos = new int[3];
+		int[] min = { 0, section * ChunkSection.SIZE, 0 };
+
+		for (int face = 0; face < 6; face++) {
+			int[] normal = FACE_NORMAL[face];
+			int axis = FACE_AXIS[face];
+			int uAxis = FACE_U_AXIS[face];
+			int vAxis = FACE_V_AXIS[face];
+			int width = SIZE[uAxis];
+			int height = SIZE[vAxis];
+
+			for (int slice = 0; slice < SIZE[axis]; slice++) {
+				pos[axis] = min[axis] + slice;
+
+				// Find all visible faces in this slice
+				boolean empty = true;
+				for (int b = 0; b < height; b++) {
+					pos[vAxis] = min[vAxis] + b;
+					for (int a = 0; a < width; a++) {
+						pos[uAxis] = min[uAxis] + a;
+
+						TextureInfo tinfo = null;
+						int light = 0;
+						BlockData blockType = BlockData.getBlockData(snapshot.getBlockId(pos[0], pos[1], pos[2]));
+						if ( blockType != null && !blockType.equals(BlockData.AIR) ) {
+							if ( !hasOccluder( snapshot, pos[0] + normal[0], pos[1] + normal[1], pos[2] + normal[2] ) ) {
+								tinfo = getFaceTexture(blockType, face);
+								light = getFaceLight(snapshot, pos[0], pos[1], pos[2], face);
+								empty = false;
+							}
+						}
+
+						mask[a + b * width] = tinfo;
+						lightMask[a + b * width] = light;
+					}
+				}
+
+				if ( empty )
+					continue;
+
+				// Cover the mask with rectangles
+				for (int b = 0; b < height; b++) {
+					for (int a = 0; a < width; ) {
+						TextureInfo tinfo = mask[a + b * width];
+						if ( tinfo == null ) {
+							a++;
+							continue;
+						}
+						int light = lightMask[a + b * width];
+
+						// Grow along u
+						int w = 1;
+						while ( a + w < width && mask[a + w + b * width] == tinfo && lightMask[a + w + b * width] == light )
+							w++;
+
+						// Grow along v while the whole row matches
+						int h = 1;
+						grow:
+						while ( b + h < height ) {
+							int row = (b + h) * width;
+							for (int n = 0; n < w; n++) {
+								if ( mask[a + n + row] != tinfo || lightMask[a + n + row] != light )
+									break grow;
+							}
+							h++;
+						}
+
+						// Consume the rectangle
+						for (int m = 0; m < h; m++) {
+							int row = (b + m) * width;
+							for (int n = 0; n < w; n++) {
+								mask[a + n + row] = null;
+							}
+						}
+
+						pos[uAxis] = min[uAxis] + a;
+						pos[vAxis] = min[vAxis] + b;
+						createQuad(stream, face, pos[0], pos[1], pos[2], w, h, tinfo, light);
+
+						a += w;
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package blockgame.game.world.client;
+
+import blockgame.game.BlockData;
+import blockgame.game.world.Chunk;
+import blockgame.game.world.ChunkSection;
+import blockgame.game.world.ChunkSnapshot;
+import blockgame.gl.PackedVertexStream;
+
+/**
+ * Emits a quad for every exposed block face.
+ */
+public class NaiveChunkMesher extends ChunkMesher {
+
+	@Override
+	public void generate(ChunkSnapshot snapshot, int section, PackedVertexStream stream) {
+		// Nothing to draw in empty sections
+		if ( snapshot.isSectionEmpty(section) )
+			return;
+		
+		int minY = section * ChunkSection.SIZE;
+		for (int i = 0; i < Chunk.WIDTH; i++) {
+			for (int j = minY; j < minY + ChunkSection.SIZE; j++) {
+				for (int k = 0; k < Chunk.DEPTH; k++) {
+					byte b = snapshot.getBlockId( i, j, k );
+					
+					BlockData blockType = BlockData.getBlockData(b);
+					
+					// Do not draw air
+					if ( blockType.equals(BlockData.AIR) )
+						continue;
+					
+					// Create a face on every side that is not hidden
+					for (int face = 0; face < 6; face++) {
+						int[] normal = FACE_NORMAL[face];
+						if ( hasOccluder( snapshot, i + normal[0], j + normal[1], k + normal[2] ) )
+							continue;
+						
+						createQuad(stream, face, i, j, k, 1, 1, getFaceTexture(blockType, face), getFaceLight(snapshot, i, j, k, face));
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package blockgame.game.world.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import blockgame.game.world.Chunk;
+import blockgame.game.world.ChunkSection;
+
+/**
+ * A memory-mapped file holding a 32x32 area of chunks.
+ * <br>
+ * <br>
+ * The file is split into 4KB sectors. Sector 0 is an offset table with one int per chunk:
+ * <code>firstSector << 8 | sectorCount</code>, or 0 if the chunk was never saved. Each chunk
+ * payload starts with its length in bytes followed by a format version and the serialized sections.
+ */
+public class RegionFile {
+	public static final int SIZE = 32;
+	
+	private static final int SECTOR_BYTES = 4096;
+	private static final int HEADER_SECTORS = 1;
+	private static final int GROW_SECTORS = 64;
+	private static final byte VERSION = 1;
+	
+	private static final int MAX_CHUNK_BYTES = 4 + 1 + Chunk.SECTIONS * ChunkSection.MAX_SERIALIZED_BYTES;
+	
+	private final FileChannel channel;
+	private MappedByteBuffer buffer;
+	
+	private final int[] offsets = new int[SIZE * SIZE];
+	private int usedSectors;
+	
+	private final ByteBuffer scratch = ByteBuffer.allocate(MAX_CHUNK_BYTES);
+	
+	public RegionFile(File file) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		
+		long size = Math.max(channel.size(), HEADER_SECTORS * SECTOR_BYTES);
+		map(size - size % SECTOR_BYTES);
+		
+		// Read offset table
+		usedSectors = HEADER_SECTORS;
+		for (int i = 0; i < offsets.length; i++) {
+			int entry = buffer.getInt(i * 4);
+			offsets[i] = entry;
+			if ( entry != 0 )
+				usedSectors = Math.max(usedSectors, (entry >>> 8) + (entry & 0xFF));
+		}
+	}
+	
+	private void map(long size) throws IOException {
+		// Mapping past the end of the file grows it
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+	
+	/**
+	 * @return True if the chunk at a region-local coordinate has been saved.
+	 */
+	public synchronized boolean hasChunk( int localX, int localZ ) {
+		return offsets[localX + localZ * SIZE] != 0;
+	}
+	
+	/**
+	 * Read the blocks of a chunk from this region.
+	 * @param localX Region-local chunk x, 0 to SIZE-1
+	 * @param localZ Region-local chunk z, 0 to SIZE-1
+	 * @param chunk Chunk to fill
+	 * @return False if the chunk has not been saved.
+	 */
+	public synchronized boolean read( int localX, int localZ, Chunk chunk ) {
+		int entry = offsets[localX + localZ * SIZE];
+		if ( entry == 0 )
+			return false;
+		
+		int position = (entry >>> 8) * SECTOR_BYTES;
+		int length = buffer.getInt(position);
+		
+		ByteBuffer in = buffer.duplicate();
+		in.limit(position + 4 + length);
+		in.position(position + 4);
+		
+		if ( in.get() != VERSION )
+			return false;
+		
+		chunk.readBlocks(in);
+		return true;
+	}
+	
+	/**
+	 * Write the blocks of a chunk to this region.
+	 * @param localX Region-local chunk x, 0 to SIZE-1
+	 * @param localZ Region-local chunk z, 0 to SIZE-1
+	 * @param chunk Chunk to save
+	 * @throws IOException
+	 */
+	public synchronized void write( int localX, int localZ, Chunk chunk ) throws IOException {
+		// Serialize
+		scratch.clear();
+		scratch.putInt(0);
+		scratch.put(VERSION);
+		chunk.writeBlocks(scratch);
+		int length = scratch.position() - 4;
+		scratch.putInt(0, length);
+		scratch.flip();
+		
+		int sectors = (scratch.remaining() + SECTOR_BYTES - 1) / SECTOR_BYTES;
+		int index = localX + localZ * SIZE;
+		int entry = offsets[index];
+		
+		// Reuse the old sectors if the chunk still fits, otherwise append
+		int firstSector;
+		if ( entry != 0 && (entry & 0xFF) >= sectors ) {
+			firstSector = entry >>> 8;
+			sectors = entry & 0xFF;
+		} else {
+			firstSector = usedSectors;
+			usedSectors += sectors;
+		}
+		
+		// Grow the mapping
+		long required = (long) usedSectors * SECTOR_BYTES;
+		if ( required > buffer.capacity() ) {
+			map(required + GROW_SECTORS * SECTOR_BYTES);
+		}
+		
+		// Copy payload
+		ByteBuffer out = buffer.duplicate();
+		out.position(firstSector * SECTOR_BYTES);
+		out.put(scratch);
+		
+		// Update offset table
+		entry = firstSector << 8 | sectors;
+		offsets[index] = entry;
+		buffer.putInt(index * 4, entry);
+	}
+	
+	/**
+	 * Flush changes to disk and close the file.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+}
@@ -0,0 +1,90 @@
+package blockgame.game.world.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import blockgame.game.world.Chunk;
+
+/**
+ * Saves and loads chunks through a directory of {@link RegionFile}s.
+ */
+public class RegionStorage {
+	private final File directory;
+	private final Map<Long, RegionFile> regions = new HashMap<Long, RegionFile>();
+	private boolean closed;
+	
+	public RegionStorage(File directory) {
+		this.directory = directory;
+		this.directory.mkdirs();
+	}
+	
+	/**
+	 * @return The directory region files are stored in.
+	 */
+	public File getDirectory() {
+		return this.directory;
+	}
+	
+	/**
+	 * Fill a chunk with its saved blocks.
+	 * @param chunk
+	 * @return False if the chunk has never been saved.
+	 * @throws IOException
+	 */
+	public boolean loadChunk(Chunk chunk) throws IOException {
+		RegionFile region = getRegion(chunk.getX(), chunk.getZ());
+		return region.read(Math.floorMod(chunk.getX(), RegionFile.SIZE), Math.floorMod(chunk.getZ(), RegionFile.SIZE), chunk);
+	}
+	
+	/**
+	 * Write a chunk's blocks to disk and clear its dirty flag.
+	 * @param chunk
+	 * @throws IOException
+	 */
+	public void saveChunk(Chunk chunk) throws IOException {
+		RegionFile region = getRegion(chunk.getX(), chunk.getZ());
+		
+		// Cleared before writing so edits made during the write flag the chunk again
+		chunk.markSaved();
+		try {
+			region.write(Math.floorMod(chunk.getX(), RegionFile.SIZE), Math.floorMod(chunk.getZ(), RegionFile.SIZE), chunk);
+		} catch (IOException e) {
+			chunk.markUnsaved();
+			throw e;
+		}
+	}
+	
+	private synchronized RegionFile getRegion(int chunkX, int chunkZ) throws IOException {
+		if ( closed )
+			throw new IOException("Region storage is closed: " + directory);
+		
+		int regionX = Math.floorDiv(chunkX, RegionFile.SIZE);
+		int regionZ = Math.floorDiv(chunkZ, RegionFile.SIZE);
+		long key = (long) regionX << 32 | (regionZ & 0xFFFFFFFFL);
+		
+		RegionFile region = regions.get(key);
+		if ( region == null ) {
+			region = new RegionFile(new File(directory, "r." + regionX + "." + regionZ + ".region"));
+			regions.put(key, region);
+		}
+		
+		return region;
+	}
+	
+	/**
+	 * Flush and close every open region file. Loading or saving afterwards throws an IOException.
+	 */
+	public synchronized void close() {
+		closed = true;
+		for (RegionFile region : regions.values()) {
+			try {
+				region.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		regions.clear();
+	}
+}
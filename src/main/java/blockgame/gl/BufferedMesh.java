@@ -1,17 +1,17 @@
 package blockgame.gl;
 
-import static org.lwjgl.opengl.GL11.GL_FLOAT;
 import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
-import static org.lwjgl.opengl.GL11.glDrawArrays;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.glDrawElements;
 import static org.lwjgl.opengl.GL15.GL_ARRAY_BUFFER;
 import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
 import static org.lwjgl.opengl.GL15.glBindBuffer;
 import static org.lwjgl.opengl.GL15.glBufferData;
 import static org.lwjgl.opengl.GL15.glGenBuffers;
 import static org.lwjgl.opengl.GL20.glEnableVertexAttribArray;
-import static org.lwjgl.opengl.GL20.glVertexAttribPointer;
 import static org.lwjgl.opengl.GL30.glBindVertexArray;
 import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL30.glVertexAttribIPointer;
 
 import org.joml.Matrix4f;
 import org.lwjgl.opengl.GL15;
@@ -20,129 +20,79 @@ import org.lwjgl.opengl.GL30;
 public class BufferedMesh {
 	private int vaoId = -1;
 	private int vboId = -1;
-	private Vertex[] vertices;
+	private int[] packedData;
 	private int size;
 	private boolean modified;
 	
 	public static boolean discardVerticesOnUpload = true;
 
-	public BufferedMesh(int vertices) {
-		resize(vertices);
-	}
-
 	/**
-	 * Set a vertex at a given index for this mesh.
-	 * @param index
-	 * @param vertex
+	 * Create a mesh from {@link PackedVertex} data.
+	 * @param stream
 	 */
-	public void setVertex(int index, Vertex vertex) {
-		modified = true;
-		vertices[index] = vertex;
+	public BufferedMesh(PackedVertexStream stream) {
+		setData(stream);
 	}
 
 	/**
-	 * Get the vertex at a given index.
-	 * @param i
-	 * @return
+	 * Replace the contents of this mesh with {@link PackedVertex} data. Vertices are read four per quad and
+	 * drawn through the shared {@link QuadIndexBuffer}. The data is copied, so the stream may be cleared
+	 * and reused afterwards.
+	 * @param stream
 	 */
-	public Vertex getVertex(int i) {
-		return vertices[i];
+	public void setData(PackedVertexStream stream) {
+		modified = true;
+		packedData = stream.toArray();
 	}
 
 	/**
-	 * Return the array of vertices for this mesh.
+	 * Return the amount of vertices in the mesh
 	 * @return
 	 */
-	public Vertex[] getVertices() {
-		return this.vertices;
+	public int getSize() {
+		if ( packedData != null )
+			return packedData.length / PackedVertex.elementCount;
+		return size;
 	}
 
 	/**
-	 * Change the amount of vertices used in this mesh.
-	 * @param size
+	 * @return Approximate memory used by this mesh in bytes. Counts VRAM once uploaded.
 	 */
-	public void resize(int size) {
-		// Store old vertices.
-		Vertex[] old = vertices;
-
-		// Make new vertex list.
-		vertices = new Vertex[size];
-		modified = true;
-		
-		// Try to fill old vertices into new list.
-		if ( old != null ) {
-			System.arraycopy(old, 0, vertices, 0, Math.min(size, old.length));
-		}
-	}
-
-	/**
-	 * Return the amount of vertices in the mesh
-	 * @return
-	 */
-	public int getSize() {
-		if ( vertices == null )
-			return 0;
-		return vertices.length;
+	public long getByteSize() {
+		if ( packedData != null )
+			return packedData.length * 4L;
+		return (long) size * PackedVertex.stride;
 	}
 
 	protected void sendToGPU() {
-		// Initial vertex data
-		float[] buffer = null;
-		
-		synchronized(vertices) {
-			int len = vertices.length;
-			buffer = new float[len * Vertex.elementCount];
-			for (int i = 0; i < len; i++) {
-				float[] elements = vertices[i].getElements();
-				System.arraycopy(elements, 0, buffer, i*Vertex.elementCount, elements.length);
-			}
-		}
-
-		// Generate buffers
-		if ( vboId == -1 )
-			vboId = glGenBuffers();
-		
-		if ( vaoId == -1 )
-			vaoId = glGenVertexArrays();
+		// Packed data uses its own attribute layout, so always start from a fresh VAO
+		destroyBuffers();
+		vboId = glGenBuffers();
+		vaoId = glGenVertexArrays();
 
 		// Upload Vertex Buffer
 		glBindBuffer(GL_ARRAY_BUFFER, vboId);
-		glBufferData(GL_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
+		glBufferData(GL_ARRAY_BUFFER, packedData, GL_STATIC_DRAW);
 
-		// Set attributes (automatically stored to currently bound VAO)
-		bindVertexAttributes();
+		// Both words as unsigned integers, decoded in the vertex shader
+		glBindVertexArray(vaoId);
+		glEnableVertexAttribArray(0);
+		glVertexAttribIPointer(0, PackedVertex.elementCount, GL_UNSIGNED_INT, PackedVertex.stride, 0);
+		
+		// Quads share one element buffer. The binding is stored in the VAO.
+		QuadIndexBuffer.bind(packedData.length / PackedVertex.elementCount / QuadIndexBuffer.VERTICES_PER_QUAD);
 
 		// Unbind
 		glBindBuffer(GL_ARRAY_BUFFER, 0);
 
-		// Clear buffer (Garbage collect)
-		buffer = null;
-
-		// Reset modified flag
-		size = vertices.length;
+		size = packedData.length / PackedVertex.elementCount;
 		modified = false;
-		
+
 		if ( discardVerticesOnUpload ) {
-			vertices = null;
+			packedData = null;
 		}
 	}
 
-	protected void bindVertexAttributes() {
-		// Enable the attributes
-		glBindVertexArray(vaoId);
-		glEnableVertexAttribArray(0);
-		glEnableVertexAttribArray(1);
-		glEnableVertexAttribArray(2);
-		glEnableVertexAttribArray(3);
-
-		// Define the attributes
-		boolean normalized = false;
-		glVertexAttribPointer(0, Vertex.positionElementCount, GL_FLOAT, normalized, Vertex.stride, Vertex.positionByteOffset);
-		glVertexAttribPointer(1, Vertex.normalElementCount, GL_FLOAT,  normalized, Vertex.stride, Vertex.normalByteOffset);
-		glVertexAttribPointer(2, Vertex.textureElementCount, GL_FLOAT,  normalized, Vertex.stride, Vertex.textureByteOffset);
-		glVertexAttribPointer(3, Vertex.colorElementCount, GL_FLOAT, normalized, Vertex.stride, Vertex.colorByteOffset);
-	}
-
 	/**
 	 * Bind this VAO to the OpenGL state.
 	 */
@@ -162,7 +112,8 @@ public class BufferedMesh {
 	 * It must be re-filled with vertex data.
 	 */
 	public void cleanup() {
-		vertices = null;
+		packedData = null;
+		size = 0;
 		modified = true;
 		destroyBuffers();
 	}
@@ -207,7 +158,7 @@ public class BufferedMesh {
 		}
 
 		// Draw
-		glDrawArrays(GL_TRIANGLES, 0, size);
+		glDrawElements(GL_TRIANGLES, size / QuadIndexBuffer.VERTICES_PER_QUAD * QuadIndexBuffer.INDICES_PER_QUAD, GL_UNSIGNED_INT, 0);
 
 		// Unbind VAO
 		this.unbind();
@@ -0,0 +1,143 @@
+package blockgame.gl;
+
+/**
+ * Compact vertex used by chunk meshes, two unsigned ints (8 bytes) instead of the 48 of {@link Vertex}.
+ * <br>
+ * <br>
+ * Word 0: x (5 bits), y (8 bits), z (5 bits), face (3 bits). Positions are chunk-local block corners.
+ * <br>
+ * Word 1: u (8 bits), v (8 bits), atlas tile s (4 bits), atlas tile t (4 bits), light (8 bits).
+ * u and v are measured in blocks and wrap inside the tile in the shader, so merged quads repeat their texture.
+ * <br>
+ * <br>
+ * The normal is one of six axis directions and is stored as a face index. Colour is a grey light level.
+ */
+public final class PackedVertex {
+	// The amount of ints a vertex has
+	public static final int elementCount = 2;
+
+	// The size of a vertex in bytes
+	public static final int stride = elementCount * 4;
+
+	/** Texture coordinate stride of the float layout: s = tile * TILE_STRIDE + u */
+	public static final int TILE_STRIDE = 256;
+
+	/** Normal of each face index */
+	public static final int[][] NORMALS = { {0,-1,0}, {0,1,0}, {-1,0,0}, {1,0,0}, {0,0,1}, {0,0,-1} };
+
+	private PackedVertex() {
+		//
+	}
+
+	/**
+	 * Pack the first word of a vertex.
+	 * @param x 0 to 31
+	 * @param y 0 to 255
+	 * @param z 0 to 31
+	 * @param face Index into {@link #NORMALS}
+	 */
+	public static int packPosition(int x, int y, int z, int face) {
+		return x | y << 5 | z << 13 | face << 18;
+	}
+
+	/**
+	 * Pack the second word of a vertex.
+	 * @param u 0 to 255
+	 * @param v 0 to 255
+	 * @param tileS 0 to 15
+	 * @param tileT 0 to 15
+	 * @param light 0 (dark) to 255 (full bright)
+	 */
+	public static int packTexture(int u, int v, int tileS, int tileT, int light) {
+		return u | v << 8 | tileS << 16 | tileT << 20 | light << 24;
+	}
+
+	public static int getX(int position) {
+		return position & 31;
+	}
+
+	public static int getY(int position) {
+		return (position >>> 5) & 255;
+	}
+
+	public static int getZ(int position) {
+		return (position >>> 13) & 31;
+	}
+
+	public static int getFace(int position) {
+		return (position >>> 18) & 7;
+	}
+
+	public static int getU(int texture) {
+		return texture & 255;
+	}
+
+	public static int getV(int texture) {
+		return (texture >>> 8) & 255;
+	}
+
+	public static int getTileS(int texture) {
+		return (texture >>> 16) & 15;
+	}
+
+	public static int getTileT(int texture) {
+		return (texture >>> 20) & 15;
+	}
+
+	public static int getLight(int texture) {
+		return texture >>> 24;
+	}
+
+	/**
+	 * Pack a vertex stored in the float layout of {@link Vertex}.
+	 * @param src Float vertex data
+	 * @param srcOffset Index of the vertex's first float
+	 * @param dst Packed vertex data
+	 * @param dstOffset Index of the vertex's first int
+	 */
+	public static void pack(float[] src, int srcOffset, int[] dst, int dstOffset) {
+		int face = 0;
+		for (int i = 0; i < NORMALS.length; i++) {
+			int[] n = NORMALS[i];
+			if ( n[0] == src[srcOffset+3] && n[1] == src[srcOffset+4] && n[2] == src[srcOffset+5] ) {
+				face = i;
+				break;
+			}
+		}
+
+		int s = Math.round(src[srcOffset+6]);
+		int t = Math.round(src[srcOffset+7]);
+		int tileS = Math.floorDiv(s, TILE_STRIDE);
+		int tileT = Math.floorDiv(t, TILE_STRIDE);
+
+		dst[dstOffset] = packPosition(Math.round(src[srcOffset]), Math.round(src[srcOffset+1]), Math.round(src[srcOffset+2]), face);
+		dst[dstOffset+1] = packTexture(s - tileS * TILE_STRIDE, t - tileT * TILE_STRIDE, tileS, tileT, Math.round(src[srcOffset+8] * 255));
+	}
+
+	/**
+	 * Expand a packed vertex into the float layout of {@link Vertex}.
+	 * @param src Packed vertex data
+	 * @param srcOffset Index of the vertex's first int
+	 * @param dst Float vertex data
+	 * @param dstOffset Index of the vertex's first float
+	 */
+	public static void unpack(int[] src, int srcOffset, float[] dst, int dstOffset) {
+		int position = src[srcOffset];
+		int texture = src[srcOffset+1];
+		int[] normal = NORMALS[getFace(position)];
+		float light = getLight(texture) / 255f;
+
+		dst[dstOffset] = getX(position);
+		dst[dstOffset+1] = getY(position);
+		dst[dstOffset+2] = getZ(position);
+		dst[dstOffset+3] = normal[0];
+		dst[dstOffset+4] = normal[1];
+		dst[dstOffset+5] = normal[2];
+		dst[dstOffset+6] = getTileS(texture) * TILE_STRIDE + getU(texture);
+		dst[dstOffset+7] = getTileT(texture) * TILE_STRIDE + getV(texture);
+		dst[dstOffset+8] = light;
+		dst[dstOffset+9] = light;
+		dst[dstOffset+10] = light;
+		dst[dstOffset+11] = 1;
+	}
+}
@@ -0,0 +1,119 @@
+package blockgame.gl;
+
+import java.util.Arrays;
+
+/**
+ * Growable, reusable buffer of {@link PackedVertex} data. Chunk meshers write into this directly,
+ * so no floats or per-vertex objects are created while building a mesh.
+ * <br>
+ * <br>
+ * Vertices are written four per quad, in order around the quad. See {@link QuadIndexBuffer}.
+ */
+public class PackedVertexStream {
+	private int[] data;
+	private int position;
+
+	public PackedVertexStream() {
+		this(4096);
+	}
+
+	public PackedVertexStream(int initialVertices) {
+		this.data = new int[Math.max(1, initialVertices) * PackedVertex.elementCount];
+	}
+
+	/**
+	 * Append a vertex to the stream. See {@link PackedVertex} for the range of each value.
+	 */
+	public PackedVertexStream vertex(int x, int y, int z, int face, int u, int v, int tileS, int tileT, int light) {
+		ensureCapacity(PackedVertex.elementCount);
+
+		data[position++] = PackedVertex.packPosition(x, y, z, face);
+		data[position++] = PackedVertex.packTexture(u, v, tileS, tileT, light);
+		return this;
+	}
+
+	private void ensureCapacity(int elements) {
+		if ( position + elements <= data.length )
+			return;
+
+		data = Arrays.copyOf(data, Math.max(data.length * 2, position + elements));
+	}
+
+	/**
+	 * Reset the stream so it can be reused. The backing array is kept.
+	 */
+	public void clear() {
+		position = 0;
+	}
+
+	/**
+	 * @return The amount of vertices written to this stream.
+	 */
+	public int getVertexCount() {
+		return position / PackedVertex.elementCount;
+	}
+
+	/**
+	 * @return The amount of ints written to this stream.
+	 */
+	public int getElementCount() {
+		return position;
+	}
+
+	/**
+	 * Returns the backing array. Only the first {@link #getElementCount()} ints are valid.
+	 */
+	public int[] getData() {
+		return data;
+	}
+
+	/**
+	 * @return The amount of quads written to this stream.
+	 */
+	public int getQuadCount() {
+		return getVertexCount() / QuadIndexBuffer.VERTICES_PER_QUAD;
+	}
+
+	/**
+	 * Returns the total area of all quads in this stream. Useful to compare the output of
+	 * different meshers without a GL context.
+	 */
+	public double getSurfaceArea() {
+		return getSurfaceArea(-1);
+	}
+
+	/**
+	 * Returns the total area of the quads facing one direction.
+	 * @param face Index into {@link PackedVertex#NORMALS}, or -1 for every face.
+	 */
+	public double getSurfaceArea(int face) {
+		double area = 0;
+		int quadElements = PackedVertex.elementCount * QuadIndexBuffer.VERTICES_PER_QUAD;
+		for (int i = 0; i + quadElements <= position; i += quadElements) {
+			int a = data[i];
+			if ( face >= 0 && PackedVertex.getFace(a) != face )
+				continue;
+
+			int b = data[i + PackedVertex.elementCount];
+			int d = data[i + PackedVertex.elementCount * 3];
+
+			// Quads are rectangles, so the area is the length of the cross product of two edges
+			double abx = PackedVertex.getX(b) - PackedVertex.getX(a),	aby = PackedVertex.getY(b) - PackedVertex.getY(a),	abz = PackedVertex.getZ(b) - PackedVertex.getZ(a);
+			double adx = PackedVertex.getX(d) - PackedVertex.getX(a),	ady = PackedVertex.getY(d) - PackedVertex.getY(a),	adz = PackedVertex.getZ(d) - PackedVertex.getZ(a);
+
+			double cx = aby * adz - abz * ady;
+			double cy = abz * adx - abx * adz;
+			double cz = abx * ady - aby * adx;
+			area += Math.sqrt(cx*cx + cy*cy + cz*cz);
+		}
+
+		return area;
+	}
+
+	/**
+	 * @return A tightly sized copy of the written vertex data.
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(data, position);
+	}
+}
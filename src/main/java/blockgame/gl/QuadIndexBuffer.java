@@ -0,0 +1,61 @@
+package blockgame.gl;
+
+import static org.lwjgl.opengl.GL15.GL_ELEMENT_ARRAY_BUFFER;
+import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
+import static org.lwjgl.opengl.GL15.glBindBuffer;
+import static org.lwjgl.opengl.GL15.glBufferData;
+import static org.lwjgl.opengl.GL15.glGenBuffers;
+
+/**
+ * Element buffer shared by every mesh drawn as quads. Quad n uses vertices 4n to 4n+3 and is
+ * split into the triangles (0, 1, 2) and (2, 3, 0). The buffer only grows, and keeps its name
+ * when it does, so vertex arrays that reference it stay valid.
+ * <br>
+ * <br>
+ * Must only be used from the render thread.
+ */
+public final class QuadIndexBuffer {
+	/** Indices drawn per quad */
+	public static final int INDICES_PER_QUAD = 6;
+
+	/** Vertices stored per quad */
+	public static final int VERTICES_PER_QUAD = 4;
+
+	private static int bufferId = -1;
+	private static int capacity;
+
+	private QuadIndexBuffer() {
+		//
+	}
+
+	/**
+	 * Bind the shared buffer to the current vertex array, growing it to hold at least the given amount of quads.
+	 * @param quads
+	 */
+	public static void bind(int quads) {
+		if ( bufferId == -1 )
+			bufferId = glGenBuffers();
+
+		glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, bufferId);
+
+		if ( quads <= capacity )
+			return;
+
+		// Grow in powers of two so uploads are rare
+		int newCapacity = Math.max(1024, Integer.highestOneBit(quads - 1) << 1);
+		int[] indices = new int[newCapacity * INDICES_PER_QUAD];
+		for (int i = 0; i < newCapacity; i++) {
+			int vertex = i * VERTICES_PER_QUAD;
+			int index = i * INDICES_PER_QUAD;
+			indices[index] = vertex;
+			indices[index + 1] = vertex + 1;
+			indices[index + 2] = vertex + 2;
+			indices[index + 3] = vertex + 2;
+			indices[index + 4] = vertex + 3;
+			indices[index + 5] = vertex;
+		}
+
+		glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+		capacity = newCapacity;
+	}
+}
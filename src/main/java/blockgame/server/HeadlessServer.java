@@ -0,0 +1,75 @@
+package blockgame.server;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.joml.Vector3f;
+
+import blockgame.game.world.Chunk;
+import blockgame.game.world.ChunkManager;
+import blockgame.game.world.World;
+import blockgame.game.world.WorldConfig;
+import blockgame.game.world.storage.RegionStorage;
+
+/**
+ * Runs world generation without a window or OpenGL context. Generates every chunk within a radius
+ * of a point, saves them to disk and exits.
+ * <br>
+ * <br>
+ * Usage: HeadlessServer [radius] [centerX] [centerZ]. Radius is in chunks, the center in blocks.
+ */
+public class HeadlessServer {
+	
+	public static void main(String[] args) throws InterruptedException, IOException {
+		int radius = args.length > 0 ? Integer.parseInt(args[0]) : ChunkManager.DEFAULT_VIEW_DISTANCE;
+		float centerX = args.length > 1 ? Float.parseFloat(args[1]) : 0;
+		float centerZ = args.length > 2 ? Float.parseFloat(args[2]) : 0;
+		
+		File directory = new File("worlds", "world");
+		WorldConfig config = WorldConfig.load(directory);
+		World world = new World(config, new RegionStorage(directory));
+		ChunkManager chunkManager = world.getChunkManager();
+		chunkManager.setViewDistance(radius);
+		
+		// Load chunks around a fixed point
+		final Vector3f center = new Vector3f(centerX, 0, centerZ);
+		chunkManager.addObserver(() -> center);
+		
+		// Wait for every chunk in range
+		int side = radius * 2 + 1;
+		int total = side * side;
+		long start = System.currentTimeMillis();
+		int lastLoaded = -1;
+		while(true) {
+			int loaded = countLoaded(world, center, radius);
+			if ( loaded != lastLoaded ) {
+				System.out.println("Loaded " + loaded + " / " + total + " chunks");
+				lastLoaded = loaded;
+			}
+			
+			if ( loaded >= total )
+				break;
+			
+			Thread.sleep(100);
+		}
+		
+		System.out.println("Generated " + total + " chunks in " + (System.currentTimeMillis() - start) + "ms");
+		
+		chunkManager.shutdown();
+		world.save();
+	}
+	
+	private static int countLoaded(World world, Vector3f center, int radius) {
+		int chunkX = (int)Math.floor(center.x/(float)Chunk.WIDTH);
+		int chunkZ = (int)Math.floor(center.z/(float)Chunk.DEPTH);
+		
+		int loaded = 0;
+		for (int i = chunkX-radius; i <= chunkX+radius; i++) {
+			for (int j = chunkZ-radius; j <= chunkZ+radius; j++) {
+				if ( world.getChunk(i, j) != null )
+					loaded++;
+			}
+		}
+		return loaded;
+	}
+}
@@ -2,13 +2,21 @@
 
 uniform sampler2D texture_diffuse;
 
+const float ATLAS_TILES = 16.0;
+
 in vec2 passTexCoord;
+flat in vec2 passTile;
 in vec4 passColor;
 
 out vec4 outColor;
 
 void main(void) {
-	vec4 color = texture(texture_diffuse, passTexCoord)*passColor;
+	// Repeat the tile across the quad. Gradients come from the unwrapped coordinate to avoid mip seams.
+	vec2 texCoord = (passTile + fract(passTexCoord)) / ATLAS_TILES;
+	vec2 dx = dFdx(passTexCoord) / ATLAS_TILES;
+	vec2 dy = dFdy(passTexCoord) / ATLAS_TILES;
+	
+	vec4 color = textureGrad(texture_diffuse, texCoord, dx, dy)*passColor;
 	if ( color.a < 0.001 )
 		discard;
 		
@@ -6,16 +6,25 @@ uniform mat4 worldMatrix;
 
 uniform vec3 uMaterialColor;
 
-layout(location = 0) in vec3 inPos;
-layout(location = 1) in vec3 inNormal;
-layout(location = 2) in vec2 inTexCoord;
-layout(location = 3) in vec4 inColor;
+// Two words per vertex (see PackedVertex)
+// x: x (5 bits), y (8 bits), z (5 bits), face (3 bits)
+// y: u (8 bits), v (8 bits), tile s (4 bits), tile t (4 bits), light (8 bits)
+layout(location = 0) in uvec2 inData;
 
 out vec2 passTexCoord;
+flat out vec2 passTile;
 out vec4 passColor;
 
 void main(void) {
-	gl_Position = projectionMatrix * viewMatrix * worldMatrix * vec4(inPos,1.0);
-	passTexCoord = inTexCoord;
-	passColor = inColor * vec4( uMaterialColor, 1.0 );
+	uint position = inData.x;
+	uint surface = inData.y;
+	
+	vec3 pos = vec3(float(position & 31u), float((position >> 5u) & 255u), float((position >> 13u) & 31u));
+	gl_Position = projectionMatrix * viewMatrix * worldMatrix * vec4(pos,1.0);
+	
+	passTexCoord = vec2(float(surface & 255u), float((surface >> 8u) & 255u));
+	passTile = vec2(float((surface >> 16u) & 15u), float((surface >> 20u) & 15u));
+	
+	float light = float(surface >> 24u) / 255.0;
+	passColor = vec4(vec3(light), 1.0) * vec4( uMaterialColor, 1.0 );
 }